@@ -0,0 +1,13 @@
+.text
+	li t0, 8	# (MOV, a, 8)
+	li t1, 5	# (MOV, b, 5)
+	li t2, 3	# (MOV, $6, 3)
+	sub t3, t2, t0	# (SUB, $0, $6, a)
+	mv t4, t3	# (MOV, c, $0)
+	mul t5, t0, t1	# (MUL, $1, a, b)
+	addi t6, t1, 3	# (ADD, $2, b, 3)
+	sub t1, t4, t0	# (SUB, $3, c, a)
+	mul t0, t6, t1	# (MUL, $4, $2, $3)
+	sub t1, t5, t0	# (SUB, $5, $1, $4)
+	mv t0, t1	# (MOV, result, $5)
+	mv a0, t0	# (RET, , result)
@@ -0,0 +1,83 @@
+#!/usr/bin/bash
+
+# 检查各项可选的优化与默认路径得到的结果是否一致, 有不一致时以非零状态退出. 在项目根目录下运行:
+#     bash scripts/check.sh
+# 能编译 src-vector 时同时检查基于 jdk.incubator.vector 的扫描核心.
+# 公共 ForkJoinPool 的并行度固定为 4, 使单核机器上也走并行分析的路径.
+
+set -e
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+javac -encoding UTF-8 -d "$work/classes" $(find src -name '*.java')
+java_opts="-Dfile.encoding=UTF-8 -Djava.util.concurrent.ForkJoinPool.common.parallelism=4 -cp $work/classes"
+if javac -encoding UTF-8 --add-modules jdk.incubator.vector -cp "$work/classes" -d "$work/classes" \
+        src-vector/cn/edu/hitsz/compiler/lexer/*.java 2>/dev/null; then
+    java_opts="$java_opts --add-modules jdk.incubator.vector"
+fi
+
+# 词法分析: 批量扫描, 分块并行分析, 按需分析的词法单元流与增量编辑都应与逐字符扫描一致
+java $java_opts cn.edu.hitsz.compiler.lexer.LexerCheck data/in/input_code.txt data/in/non-bmp.txt
+
+# 语法分析及之后的各阶段: 生成超过并行分析阈值的输入, 以各组选项运行 Main, 输出应与默认选项相同
+# 生成的输入有两份, 第二份在中间有一个语法错误
+generate() {
+    echo "int result;"
+    echo "result = 0;"
+    for i in $(seq 4000); do
+        echo "int a$i;"
+        echo "a$i = $i;"
+        [ "$1" = error ] && [ "$i" = 2000 ] && echo "a$i = = 3;"
+        echo "result = a$i * ( 3 + a$i ) - result;"
+    done
+    echo "return result;"
+}
+
+# 在 $1 目录中运行 Main, 其余参数为 JVM 选项; 标准输出 (诊断信息) 也作为一项输出比较
+run_main() {
+    local dir=$1
+    shift
+    rm -rf "$dir/data/out"
+    mkdir -p "$dir/data/out"
+    (cd "$dir" && java $java_opts "$@" cn.edu.hitsz.compiler.Main < /dev/null > data/out/stdout.txt)
+}
+
+failed=0
+for input in ok error; do
+    dir=$work/$input
+    mkdir -p "$dir/data/in"
+    cp data/in/coding_map.csv data/in/grammar.txt data/in/LR1_table.csv "$dir/data/in/"
+    generate $input > "$dir/data/in/input_code.txt"
+
+    run_main "$dir"
+    rm -f "$dir/data/out/LR1_table.bin"
+    mv "$dir/data/out" "$dir/expected"
+
+    # 每行为一组选项, 以及不参与比较的输出: 左递归的 S_list 改变了规约列表
+    while read -r ignored options; do
+        run_main "$dir" ${options//@work@/$work}
+        result=ok
+        for expected in "$dir"/expected/*; do
+            name=$(basename "$expected")
+            [ "$name" = "$ignored" ] && continue
+            if ! cmp -s "$expected" "$dir/data/out/$name"; then
+                result="$name differs"
+                failed=1
+            fi
+        done
+        echo "$input input, $options: $result"
+    done <<EOF
+- -Dparser.pipeline=true
+- -Dparser.compressTable=true
+- -Dparser.shortcutUnits=true
+- -Dparser.shortcutUnits=true -Dparser.compressTable=true
+- -Dparser.parallel=true
+- -Dparser.reductionLog=@work@/reductions.bin
+parser_list.txt -Dparser.leftRecursiveList=true
+EOF
+done
+
+if [ $failed = 1 ]; then
+    exit 1
+fi
+echo "All checks passed"
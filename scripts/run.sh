@@ -3,4 +3,12 @@
 cd src
 javac cn/edu/hitsz/compiler/*.java
 cd ..
-java -cp src cn.edu.hitsz.compiler.Main
+
+# 设置 LEXER_VECTOR=1 时另外编译 src-vector 中基于 jdk.incubator.vector 的扫描核心并启用它,
+# JVM 会在标准错误上打印 "WARNING: Using incubator modules: jdk.incubator.vector"
+if [ "$LEXER_VECTOR" = "1" ]; then
+    javac --add-modules jdk.incubator.vector -cp src -d src src-vector/cn/edu/hitsz/compiler/lexer/*.java
+    java --add-modules jdk.incubator.vector -cp src cn.edu.hitsz.compiler.Main
+else
+    java -cp src cn.edu.hitsz.compiler.Main
+fi
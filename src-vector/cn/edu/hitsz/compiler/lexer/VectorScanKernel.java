@@ -0,0 +1,101 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 基于 jdk.incubator.vector 的扫描核心
+ * <br>
+ * 每次载入平台首选宽度 (16 至 64 字节) 的一段字节, 用比较得到 "属于该类" 的掩码, 对其取反后
+ * {@link VectorMask#firstTrue()} 即为段结尾在这一批中的位置. 剩余不足一批的字节逐个判断.
+ * <br>
+ * 源程序中多数词法单元与空白都只有几个字符, 此时载入整批字节反而更慢, 因此先逐个判断前 {@link #PROBE} 个字节,
+ * 段还未结束时才转入向量比较.
+ * <br>
+ * 只通过 {@link ScanKernel#forSource} 反射加载, 其余代码不应直接引用该类.
+ */
+final class VectorScanKernel implements ScanKernel {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    private static final int PROBE = 8;
+
+    VectorScanKernel(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.array = bytes.hasArray() && bytes.arrayOffset() == 0 ? bytes.array() : null;
+    }
+
+    @Override
+    public int skipWhitespace(int from, int to) {
+        var i = from;
+        for (final var probeEnd = Math.min(from + PROBE, to); i < probeEnd; i++) {
+            if (!isWhitespace(byteAt(i))) {
+                return i;
+            }
+        }
+        for (; i + LANES <= to; i += LANES) {
+            final var v = load(i);
+            final var skip = v.eq((byte) ' ')
+                    .or(v.eq((byte) '\n'))
+                    .or(v.eq((byte) '\r'))
+                    .or(v.eq((byte) '\t'));
+            final var first = skip.not().firstTrue();
+            if (first < LANES) {
+                return i + first;
+            }
+        }
+        while (i < to && isWhitespace(byteAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    @Override
+    public int digitsEnd(int from, int to) {
+        var i = from;
+        for (final var probeEnd = Math.min(from + PROBE, to); i < probeEnd; i++) {
+            if (!isDigit(byteAt(i))) {
+                return i;
+            }
+        }
+        for (; i + LANES <= to; i += LANES) {
+            final var first = digits(load(i)).not().firstTrue();
+            if (first < LANES) {
+                return i + first;
+            }
+        }
+        while (i < to && isDigit(byteAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private ByteVector load(int offset) {
+        return array != null
+                ? ByteVector.fromArray(SPECIES, array, offset)
+                : ByteVector.fromByteBuffer(SPECIES, bytes, offset, ByteOrder.nativeOrder());
+    }
+
+    private byte byteAt(int index) {
+        return array != null ? array[index] : bytes.get(index);
+    }
+
+    private static VectorMask<Byte> digits(ByteVector v) {
+        return v.sub((byte) '0').compare(VectorOperators.UNSIGNED_LT, (byte) 10);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private final ByteBuffer bytes;
+    private final byte[] array;
+}
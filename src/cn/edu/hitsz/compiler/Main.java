@@ -6,11 +6,17 @@ import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.IRGenerator;
 import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.ReductionLog;
+import cn.edu.hitsz.compiler.parser.ReductionLogWriter;
 import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
 import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
 import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
-import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.TableCache;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
+import cn.edu.hitsz.compiler.parser.table.TableProfile;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.Diagnostics;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 import cn.edu.hitsz.compiler.utils.IREmulator;
@@ -23,58 +29,108 @@ public class Main {
         TokenKind.loadTokenKinds();
         final var symbolTable = new SymbolTable();
 
-        // 词法分析
-        final var lexer = new LexicalAnalyzer(symbolTable);
-        lexer.loadFile(FilePathConfig.SRC_CODE_PATH);
-        lexer.run();
-        lexer.dumpTokens(FilePathConfig.TOKEN_PATH);
-        final var tokens = lexer.getTokens();
-        symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
-
-        // 读取第三方程序构造的 LR 分析表
-        final var tableLoader = new TableLoader();
-        final var lrTable = tableLoader.load(FilePathConfig.LR1_TABLE_PATH);
-
-        // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表
-        // final var tableGenerator = new TableGenerator();
-        // tableGenerator.run();
-        // final var lrTable = tableGenerator.getTable();
-        // lrTable.dumpTable("data/out/lrTable.csv");
-
-        // 加载 LR 分析驱动程序
-        final var parser = new SyntaxAnalyzer(symbolTable);
-        parser.loadTokens(tokens);
-        parser.loadLRTable(lrTable);
-
-        // 加入生成规约列表的 Observer
-        final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
-        parser.registerObserver(productionCollector);
-
-        // 加入用作语义检查的 Observer
-        final var semanticAnalyzer = new SemanticAnalyzer();
-        parser.registerObserver(semanticAnalyzer);
-
-        // 加入用作 IR 生成的 Observer
-        final var irGenerator = new IRGenerator();
-        parser.registerObserver(irGenerator);
-
-        // 执行语法解析并在解析过程中依次调用各 Observer
-        parser.run();
-
-        // 各 Observer 输出结果
-        productionCollector.dumpToFile(FilePathConfig.PARSER_PATH);
-        symbolTable.dumpTable(FilePathConfig.NEW_SYMBOL_TABLE);
-        final var instructions = irGenerator.getIR();
-        irGenerator.dumpIR(FilePathConfig.INTERMEDIATE_CODE_PATH);
-
-        // 模拟执行 IR 并输出结果
-        final var emulator = IREmulator.load(instructions);
-        FileUtils.writeFile(FilePathConfig.EMULATE_RESULT, emulator.execute().map(Objects::toString).orElse("No return value"));
-
-        // 由 IR 生成汇编
-        final var asmGenerator = new AssemblyGenerator();
-        asmGenerator.loadIR(instructions);
-        asmGenerator.run();
-        asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
+        // 词法与语法分析的错误都收集于此, 在编译结束 (或因错误过多而中止) 时统一输出
+        // 可用 -Dcompiler.maxErrors=N 设置错误数上限
+        final var diagnostics = new Diagnostics(256, Integer.getInteger("compiler.maxErrors", Integer.MAX_VALUE));
+
+        try {
+            // 词法分析
+            final var lexer = new LexicalAnalyzer(symbolTable, diagnostics);
+            lexer.loadFile(FilePathConfig.SRC_CODE_PATH);
+            lexer.run();
+            lexer.dumpTokens(FilePathConfig.TOKEN_PATH);
+            final var tokens = lexer.getTokens();
+            symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
+
+            // 读取第三方程序构造的 LR 分析表
+            // 输入文件未变时直接使用上次写出的二进制缓存, 不再解析 CSV 与 grammar.txt
+            // 可用 -Dparser.shortcutUnits=true 消去只做单产生式规约的状态, 减少规约次数
+            final var csvTable = TableCache.load(FilePathConfig.LR1_TABLE_PATH, FilePathConfig.LR1_TABLE_CACHE_PATH);
+            // 可用 -Dparser.leftRecursiveList=true 改为由 grammar.txt 构造把 S_list 改写为左递归的 LALR(1) 分析表:
+            // 每条语句在分号之后就规约完毕, 分析栈不随语句数增长, 但规约列表中 S_list 的规约会穿插在各语句之间
+            final var loadedTable = Boolean.getBoolean("parser.leftRecursiveList") ? generateLeftRecursiveTable() : csvTable;
+            final var baseTable = Boolean.getBoolean("parser.shortcutUnits")
+                ? loadedTable.shortcutUnitProductions() : loadedTable;
+            // 可用 -Dparser.profile=<路径> 按记录的访问计数重新编号状态, 使常用的行在分析表中排在一起;
+            // 同时指定 -Dparser.recordProfile=true 时改为在本次分析中记录访问计数并写入该文件 (累加到文件中已有的计数上)
+            final var profilePath = System.getProperty("parser.profile");
+            final var recordsProfile = profilePath != null && Boolean.getBoolean("parser.recordProfile");
+            final var profile = profilePath == null ? null : TableProfile.load(profilePath, baseTable)
+                .orElseGet(() -> recordsProfile ? TableProfile.create(baseTable) : null);
+            final var lrTable = profile == null || recordsProfile ? baseTable : baseTable.renumberByProfile(profile);
+
+            // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表 (默认为 SLR(1), 可传入 TableGenerator.Mode.LALR 等)
+            // final var tableGenerator = new TableGenerator(TableGenerator.Mode.LALR);
+            // tableGenerator.run();
+            // final var lrTable = tableGenerator.getTable();
+            // lrTable.dumpTable("data/out/lrTable.csv");
+
+            // 加载 LR 分析驱动程序
+            final var parser = new SyntaxAnalyzer(symbolTable, diagnostics);
+            parser.loadTokens(tokens);
+            parser.loadLRTable(lrTable);
+            // 可用 -Dparser.pipeline=true 让各 Observer 在各自的线程上与语法分析并行执行
+            parser.setPipelined(Boolean.getBoolean("parser.pipeline"));
+            // 可用 -Dparser.compressTable=true 改用压缩形式的分析表
+            parser.setCompressedTable(Boolean.getBoolean("parser.compressTable"));
+            // 可用 -Dparser.parallel=true 在较长的输入上并行分析各语句, 观察者仍按串行的顺序执行
+            parser.setParallel(Boolean.getBoolean("parser.parallel"));
+            if (recordsProfile) {
+                parser.setProfile(profile);
+            }
+
+            // 加入生成规约列表的 Observer
+            // 可用 -Dparser.reductionLog=<路径> 改为在分析的同时写出二进制规约日志, 分析结束后再由日志解码出规约列表
+            final var reductionLogPath = System.getProperty("parser.reductionLog");
+            final var productionCollector =
+                reductionLogPath == null ? new ProductionCollector(GrammarInfo.getBeginProduction()) : null;
+            final var reductionLog =
+                reductionLogPath == null ? null : new ReductionLogWriter(reductionLogPath, lrTable);
+            parser.registerObserver(productionCollector != null ? productionCollector : reductionLog);
+
+            // 加入用作语义检查的 Observer
+            final var semanticAnalyzer = new SemanticAnalyzer();
+            parser.registerObserver(semanticAnalyzer);
+
+            // 加入用作 IR 生成的 Observer
+            final var irGenerator = new IRGenerator();
+            parser.registerObserver(irGenerator);
+
+            // 执行语法解析并在解析过程中依次调用各 Observer
+            parser.run();
+            if (recordsProfile) {
+                profile.save(profilePath);
+            }
+
+            // 各 Observer 输出结果
+            if (productionCollector != null) {
+                productionCollector.dumpToFile(FilePathConfig.PARSER_PATH);
+            } else {
+                reductionLog.close();
+                ReductionLog.decode(reductionLogPath, FilePathConfig.PARSER_PATH);
+            }
+            symbolTable.dumpTable(FilePathConfig.NEW_SYMBOL_TABLE);
+            final var instructions = irGenerator.getIR();
+            irGenerator.dumpIR(FilePathConfig.INTERMEDIATE_CODE_PATH);
+
+            // 模拟执行 IR 并输出结果
+            final var emulator = IREmulator.load(instructions);
+            FileUtils.writeFile(FilePathConfig.EMULATE_RESULT, emulator.execute().map(Objects::toString).orElse("No return value"));
+
+            // 由 IR 生成汇编
+            final var asmGenerator = new AssemblyGenerator();
+            asmGenerator.loadIR(instructions);
+            asmGenerator.run();
+            asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
+        } finally {
+            diagnostics.emit();
+        }
+    }
+
+    private static LRTable generateLeftRecursiveTable() {
+        final var generator = new TableGenerator(TableGenerator.Mode.LALR);
+        generator.setLeftRecursiveLists(true);
+        generator.run();
+        return generator.getTable();
     }
 }
@@ -6,7 +6,6 @@ import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.io.File;
 import java.util.*;
-import java.util.stream.Collectors;
 
 
 /**
@@ -28,8 +27,9 @@ public class AssemblyGenerator {
         t0, t1, t2, t3, t4, t5, t6
     }
     private final List<Instruction> insts = new ArrayList<>();
-    Map<IRValue, REG> v2r = new HashMap<>();
-    Map<REG, IRValue> r2v = new HashMap<>();
+    // 以 IRVariable 的稠密下标为数组下标记录变量所在的寄存器, 以寄存器的序号为下标记录寄存器中的变量
+    REG[] v2r = new REG[16];
+    IRValue[] r2v = new IRValue[REG.values().length];
     private final List<String> asm = new ArrayList<>(List.of(".text"));
     
 
@@ -102,30 +102,51 @@ public class AssemblyGenerator {
     
     public void allocate(IRValue oprands, int idx) {
         if(oprands.isImmediate()) return;
-        if(v2r.containsKey(oprands)) return;
+        if(regOf(oprands) != null) return;
         for(var reg : REG.values()) {
-            if(!r2v.containsKey(reg)) {
-                r2v.put(reg, oprands);
-                v2r.put(oprands, reg);
+            if(r2v[reg.ordinal()] == null) {
+                bind(reg, (IRVariable)oprands);
                 return;
             }
         }
-        Set<REG> unused = Arrays.stream(REG.values()).collect(Collectors.toSet());
+        boolean[] used = new boolean[REG.values().length];
         for(int i = idx; i < insts.size(); ++i) {
             var inst = insts.get(i);
             for(var irv : inst.getOprands()) {
-                unused.remove(v2r.get(irv));
+                var reg = regOf(irv);
+                if(reg != null) used[reg.ordinal()] = true;
             }
         }
-        if(!unused.isEmpty()) {
-            var touse = unused.iterator().next();
-            r2v.put(touse, oprands);
-            v2r.put(oprands, touse);
-            return;
+        // 取编号最小的不再被用到的寄存器. 不能从 HashSet<REG> 中任取: 枚举的哈希值是对象的 identity hash,
+        // 其遍历顺序随 JVM 的运行情况而变, 生成的汇编代码也就不可复现
+        for(var reg : REG.values()) {
+            if(!used[reg.ordinal()]) {
+                bind(reg, (IRVariable)oprands);
+                return;
+            }
         }
         throw new RuntimeException("No enough registers");
     }
 
+    /**
+     * @param value IR 值
+     * @return 该值所在的寄存器; 若为立即数或尚未分配则返回 null
+     */
+    private REG regOf(IRValue value) {
+        if(!(value instanceof IRVariable variable)) return null;
+        int index = variable.getIndex();
+        return index < v2r.length ? v2r[index] : null;
+    }
+
+    private void bind(REG reg, IRVariable variable) {
+        int index = variable.getIndex();
+        if(index >= v2r.length) {
+            v2r = Arrays.copyOf(v2r, Math.max(index + 1, v2r.length * 2));
+        }
+        r2v[reg.ordinal()] = variable;
+        v2r[index] = reg;
+    }
+
 
     /**
      * 执行代码生成.
@@ -149,9 +170,9 @@ public class AssemblyGenerator {
                     this.allocate(lhs, i);
                     this.allocate(rhs, i);
                     this.allocate(result, i);
-                    var reg_lhs = v2r.get(lhs);
-                    var reg_rhs = v2r.get(rhs);
-                    var reg_result = v2r.get(result);
+                    var reg_lhs = regOf(lhs);
+                    var reg_rhs = regOf(rhs);
+                    var reg_result = regOf(result);
                     if(rhs.isImmediate()) {
                         code = String.format("\taddi %s, %s, %s", reg_result.toString(), reg_lhs.toString(), rhs.toString());
                     } else {
@@ -165,9 +186,9 @@ public class AssemblyGenerator {
                     this.allocate(lhs, i);
                     this.allocate(rhs, i);
                     this.allocate(result, i);
-                    var reg_lhs = v2r.get(lhs);
-                    var reg_rhs = v2r.get(rhs);
-                    var reg_result = v2r.get(result);
+                    var reg_lhs = regOf(lhs);
+                    var reg_rhs = regOf(rhs);
+                    var reg_result = regOf(result);
                     if(rhs.isImmediate()) {
                         code = String.format("\tsubi %s, %s, %s", reg_result.toString(), reg_lhs.toString(), rhs.toString());
                     } else {
@@ -181,9 +202,9 @@ public class AssemblyGenerator {
                     this.allocate(lhs, i);
                     this.allocate(rhs, i);
                     this.allocate(result, i);
-                    var reg_lhs = v2r.get(lhs);
-                    var reg_rhs = v2r.get(rhs);
-                    var reg_result = v2r.get(result);
+                    var reg_lhs = regOf(lhs);
+                    var reg_rhs = regOf(rhs);
+                    var reg_result = regOf(result);
                     code = String.format("\tmul %s, %s, %s", reg_result.toString(), reg_lhs.toString(), reg_rhs.toString());
                 }
                 case MOV -> {
@@ -191,8 +212,8 @@ public class AssemblyGenerator {
                     var to = inst.getResult();
                     this.allocate(from, i);
                     this.allocate(to, i);
-                    var reg_from = v2r.get(from);
-                    var reg_to = v2r.get(to);
+                    var reg_from = regOf(from);
+                    var reg_to = regOf(to);
                     if(from.isImmediate()) {
                         code = String.format("\tli %s, %s", reg_to.toString(), from.toString());
                     } else {
@@ -201,7 +222,7 @@ public class AssemblyGenerator {
                 }
                 case RET -> {
                     var ret = inst.getReturnValue();
-                    var return_reg = v2r.get(ret);
+                    var return_reg = regOf(ret);
                     code = String.format("\tmv a0, %s", return_reg.toString());
                 }
                 default -> {
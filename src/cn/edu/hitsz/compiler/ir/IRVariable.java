@@ -6,30 +6,50 @@ package cn.edu.hitsz.compiler.ir;
  * 我们允许 IR 中的变量保存一些有关源语言的信息 -- 比如它在源语言里对应的是具体的源语言变量还是源语言中的临时变量. 这些信息用一个字符串
  * name 来表示. 临时变量的 name 都是 "$[0-9]+", 而非临时变量的 name 都是 "[a-zA-Z_][a-zA-Z0-9_]*"
  * <br>
- * IR 变量的等价性由 name 唯一确定.
+ * 每个变量还带有一个整数 id: 非临时变量的 id 即源语言变量在符号表中的 id, 临时变量的 id 即其编号.
+ * IR 变量的等价性由 "是否临时变量" 与 id 唯一确定, 不需要比较 name. 两者合起来可以得到一个稠密的下标 {@link #getIndex()},
+ * 供后续各阶段以数组代替以变量为键的 Map.
  */
 public class IRVariable implements IRValue {
     /**
-     * @param name 源语言中变量的名字
+     * @param name     源语言中变量的名字
+     * @param symbolId 该变量在符号表中的 id
      * @return 一个对应于源语言中具体变量的 IRVariable
      */
-    public static IRVariable named(String name) {
-        return new IRVariable(name);
+    public static IRVariable named(String name, int symbolId) {
+        return new IRVariable(name, symbolId, false);
     }
 
     /**
      * @return 一个对应于源语言中的临时变量的新 IRVariable
      */
     public static IRVariable temp() {
-        return new IRVariable("$" + count++);
+        final var id = count++;
+        return new IRVariable("$" + id, id, true);
     }
 
     public String getName() {
         return name;
     }
 
+    /**
+     * @return 非临时变量在符号表中的 id, 或临时变量的编号
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * 非临时变量与临时变量的 id 分别从 0 开始, 交错排列后得到下标: 非临时变量为 2 * id, 临时变量为 2 * id + 1
+     *
+     * @return 该变量的稠密下标, 可直接用作数组下标
+     */
+    public int getIndex() {
+        return isTemp ? id * 2 + 1 : id * 2;
+    }
+
     public boolean isTemp() {
-        return name.startsWith("$");
+        return isTemp;
     }
 
     public boolean isNamed() {
@@ -43,18 +63,22 @@ public class IRVariable implements IRValue {
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof IRVariable reg && name.equals(reg.name);
+        return obj instanceof IRVariable reg && id == reg.id && isTemp == reg.isTemp;
     }
 
     @Override
     public int hashCode() {
-        return name.hashCode();
+        return getIndex();
     }
 
-    private IRVariable(String name) {
+    private IRVariable(String name, int id, boolean isTemp) {
         this.name = name;
+        this.id = id;
+        this.isTemp = isTemp;
     }
 
     private final String name;
+    private final int id;
+    private final boolean isTemp;
     private static int count = 0;
 }
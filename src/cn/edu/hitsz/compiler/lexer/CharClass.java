@@ -0,0 +1,74 @@
+package cn.edu.hitsz.compiler.lexer;
+
+/**
+ * 词法分析用的字符分类表
+ * <br>
+ * 源语言几乎只由 ASCII 字符构成, 因此对 ASCII 字符用一张预先计算好的 128 项表直接查出其类别,
+ * 只有遇到非 ASCII 字符时才退回到支持 Unicode 的 {@link Character#isLetter} 等方法.
+ */
+final class CharClass {
+    static final byte ERROR = 0;
+    static final byte SKIP = 1;
+    static final byte PUNCTUATION = 2;
+    // LETTER 与 DIGIT 需排在最后, isLetterOrDigit 依赖这一顺序
+    static final byte LETTER = 3;
+    static final byte DIGIT = 4;
+
+    private static final byte[] TABLE = new byte[128];
+
+    static {
+        for (final var c : " \n\r\t".toCharArray()) {
+            TABLE[c] = SKIP;
+        }
+        for (final var c : ",;=+-*/()".toCharArray()) {
+            TABLE[c] = PUNCTUATION;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            TABLE[c] = LETTER;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            TABLE[c] = LETTER;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            TABLE[c] = DIGIT;
+        }
+    }
+
+    /**
+     * @param c 字符
+     * @return 该字符的类别
+     */
+    static byte of(char c) {
+        if (c < 128) {
+            return TABLE[c];
+        }
+
+        // 非 ASCII 字符走慢速路径, 保持与 Character 一致的 Unicode 语义
+        if (Character.isLetter(c)) {
+            return LETTER;
+        } else if (Character.isDigit(c)) {
+            return DIGIT;
+        } else {
+            return ERROR;
+        }
+    }
+
+    /**
+     * @param c 字符
+     * @return 该字符能否出现在标识符的非首位
+     */
+    static boolean isLetterOrDigit(char c) {
+        return c < 128 ? TABLE[c] >= LETTER : Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * @param c 字符
+     * @return 该字符是否为数字
+     */
+    static boolean isDigit(char c) {
+        return c < 128 ? TABLE[c] == DIGIT : Character.isDigit(c);
+    }
+
+    private CharClass() {
+    }
+}
@@ -0,0 +1,203 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Arrays;
+
+/**
+ * 可以原地编辑的源文本, 供增量词法分析 (见 {@link LexicalAnalyzer#applyEdit}) 使用
+ * <br>
+ * 字符存放在带空隙的数组 (gap buffer) 中: 空隙总是停在最近一次编辑的位置, 编辑时只需把空隙移到编辑位置,
+ * 再在空隙中删除与写入字符. 因此一次编辑的开销只取决于编辑的大小以及与上一次编辑的距离, 与文本长度无关;
+ * 只有空隙用完时才整体扩容一次.
+ * <br>
+ * 同时维护各换行符位置的有序索引, 以便用二分查找求行号, 而不必从头数换行符. 索引同样带空隙,
+ * 空隙之后的位置以 "位置 - 文本长度" 的形式存放, 编辑改变文本长度时不必逐个平移.
+ */
+final class EditableSource implements CharSequence {
+    private static final int MIN_GAP = 1 << 10;
+
+    /**
+     * 复制一份初始文本, 开销与其长度成正比, 只在第一次编辑时发生
+     *
+     * @param initial 初始文本
+     */
+    EditableSource(CharSequence initial) {
+        final var length = initial.length();
+        this.chars = new char[length + Math.max(MIN_GAP, length >> 3)];
+        var newlineCount = 0;
+        for (int i = 0; i < length; i++) {
+            final var c = initial.charAt(i);
+            chars[i] = c;
+            if (c == '\n') {
+                newlineCount++;
+            }
+        }
+        this.gapStart = length;
+        this.gapEnd = chars.length;
+
+        this.newlines = new int[newlineCount + MIN_GAP];
+        var next = 0;
+        for (int i = 0; i < length; i++) {
+            if (chars[i] == '\n') {
+                newlines[next++] = i;
+            }
+        }
+        this.newlineGapStart = newlineCount;
+        this.newlineGapEnd = newlines.length;
+    }
+
+    @Override
+    public int length() {
+        return chars.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        return chars[index < gapStart ? index : index + (gapEnd - gapStart)];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        final var text = new StringBuilder(end - start);
+        if (start < gapStart) {
+            text.append(chars, start, Math.min(end, gapStart) - start);
+        }
+        if (end > gapStart) {
+            final var from = Math.max(start, gapStart);
+            text.append(chars, from + (gapEnd - gapStart), end - from);
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    /**
+     * 将 [offset, offset + removedLength) 替换为 inserted
+     *
+     * @param offset        编辑的起始位置
+     * @param removedLength 被删除的字符数
+     * @param inserted      插入的文本
+     */
+    void replace(int offset, int removedLength, CharSequence inserted) {
+        final var oldLength = length();
+        final var insertedLength = inserted.length();
+
+        // 先更新换行符索引: 空隙之后的位置以编辑前的长度存放, 移动空隙时需用编辑前的长度换算
+        moveNewlineGap(lowerBoundNewline(offset), oldLength);
+        final var removedEnd = offset + removedLength;
+        while (newlineGapEnd < newlines.length && newlines[newlineGapEnd] + oldLength < removedEnd) {
+            newlineGapEnd++;
+        }
+        for (int i = 0; i < insertedLength; i++) {
+            if (inserted.charAt(i) == '\n') {
+                if (newlineGapStart == newlineGapEnd) {
+                    growNewlines();
+                }
+                newlines[newlineGapStart++] = offset + i;
+            }
+        }
+
+        moveGap(offset);
+        gapEnd += removedLength;
+        if (gapEnd - gapStart < insertedLength) {
+            grow(insertedLength);
+        }
+        for (int i = 0; i < insertedLength; i++) {
+            chars[gapStart++] = inserted.charAt(i);
+        }
+    }
+
+    /**
+     * @param offset 文本中的位置
+     * @return 该位置所在的行号, 从 1 开始
+     */
+    int lineOf(int offset) {
+        return lowerBoundNewline(offset) + 1;
+    }
+
+    /**
+     * @param offset 文本中的位置
+     * @return 该位置所在行的起始位置
+     */
+    int lineStart(int offset) {
+        final var before = lowerBoundNewline(offset);
+        return before == 0 ? 0 : newlineAt(before - 1) + 1;
+    }
+
+    private int newlineCount() {
+        return newlines.length - (newlineGapEnd - newlineGapStart);
+    }
+
+    private int newlineAt(int index) {
+        return index < newlineGapStart ? newlines[index] : newlines[index + (newlineGapEnd - newlineGapStart)] + length();
+    }
+
+    /**
+     * @return 位置小于 offset 的换行符的个数
+     */
+    private int lowerBoundNewline(int offset) {
+        var lo = 0;
+        var hi = newlineCount();
+        while (lo < hi) {
+            final var mid = (lo + hi) >>> 1;
+            if (newlineAt(mid) < offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void moveNewlineGap(int index, int length) {
+        while (newlineGapStart > index) {
+            newlines[--newlineGapEnd] = newlines[--newlineGapStart] - length;
+        }
+        while (newlineGapStart < index) {
+            newlines[newlineGapStart++] = newlines[newlineGapEnd++] + length;
+        }
+    }
+
+    private void growNewlines() {
+        final var tail = newlines.length - newlineGapEnd;
+        final var grown = Arrays.copyOf(newlines, newlines.length * 2 + MIN_GAP);
+        System.arraycopy(newlines, newlineGapEnd, grown, grown.length - tail, tail);
+        newlineGapEnd = grown.length - tail;
+        newlines = grown;
+    }
+
+    private void moveGap(int offset) {
+        if (offset < gapStart) {
+            final var count = gapStart - offset;
+            System.arraycopy(chars, offset, chars, gapEnd - count, count);
+            gapStart -= count;
+            gapEnd -= count;
+        } else if (offset > gapStart) {
+            final var count = offset - gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, count);
+            gapStart += count;
+            gapEnd += count;
+        }
+    }
+
+    private void grow(int required) {
+        final var tail = chars.length - gapEnd;
+        final var grown = new char[chars.length + Math.max(required, Math.max(MIN_GAP, chars.length >> 3))];
+        System.arraycopy(chars, 0, grown, 0, gapStart);
+        System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+        gapEnd = grown.length - tail;
+        chars = grown;
+    }
+
+    private char[] chars;
+    // 空隙为 chars 中的 [gapStart, gapEnd)
+    private int gapStart;
+    private int gapEnd;
+
+    // 换行符位置的有序索引, 空隙为 [newlineGapStart, newlineGapEnd), 空隙之后的项为 "位置 - 文本长度"
+    private int[] newlines;
+    private int newlineGapStart;
+    private int newlineGapEnd;
+}
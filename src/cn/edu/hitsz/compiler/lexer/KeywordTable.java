@@ -0,0 +1,159 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 关键字识别用的完美哈希表
+ * <br>
+ * 码点文件中形如标识符的 TokenKind (如 int, return) 都是关键字. 词法分析器在扫描标识符时顺带用 {@link #hash(int, char)}
+ * 逐字符累积出哈希值, 随后直接在源文本上与候选关键字逐字符比较, 判断其是否为关键字, 不需要先截取出子串.
+ * <br>
+ * 构造时搜索一个乘数, 使所有关键字经 {@code (hash * multiplier) >>> shift} 映射后落在互不相同的槽中,
+ * 因此每次查找至多只需与一个候选关键字比较.
+ * <br>
+ * 若有两个关键字的哈希值相同 (如 Aa 与 BB), 或表扩大到 2^{@value #MAX_BITS} 个槽仍找不到乘数,
+ * 则退回到以关键字文本为键的普通 Map, 查找时需截取出子串.
+ */
+final class KeywordTable {
+    private static final int MAX_BITS = 16;
+    private static final int ATTEMPTS_PER_SIZE = 4096;
+
+    private static KeywordTable instance = null;
+
+    /**
+     * @return 根据码点文件构造出的关键字表, 需在 {@link TokenKind#loadTokenKinds()} 之后调用
+     */
+    static synchronized KeywordTable getInstance() {
+        if (instance == null) {
+            instance = new KeywordTable(TokenKind.allAllowedTokenKinds().values());
+        }
+
+        return instance;
+    }
+
+    /**
+     * 累积一个字符到哈希值中. 扫描标识符时以 0 为初值对每个字符调用一次即可.
+     *
+     * @param hash 之前的哈希值
+     * @param c    新的字符
+     * @return 新的哈希值
+     */
+    static int hash(int hash, char c) {
+        return hash * 31 + c;
+    }
+
+    /**
+     * 查找源文本中 [start, end) 处的标识符是否为关键字
+     *
+     * @param source 源文本
+     * @param start  标识符的起始位置
+     * @param end    标识符的结束位置 (不含)
+     * @param hash   该标识符经 {@link #hash(int, char)} 累积出的哈希值
+     * @return 对应的关键字 TokenKind; 若不是关键字则返回 null
+     */
+    TokenKind lookup(CharSequence source, int start, int end, int hash) {
+        if (fallback != null) {
+            return fallback.get(source.subSequence(start, end).toString());
+        }
+
+        final var slot = (hash * multiplier) >>> shift;
+        final var name = names[slot];
+        if (name == null || name.length() != end - start) {
+            return null;
+        }
+
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) {
+                return null;
+            }
+        }
+        return kinds[slot];
+    }
+
+    private KeywordTable(Collection<TokenKind> allKinds) {
+        final var keywords = new ArrayList<TokenKind>();
+        for (final var kind : allKinds) {
+            if (isIdentifierLike(kind.getIdentifier())) {
+                keywords.add(kind);
+            }
+        }
+
+        final var hashes = new int[keywords.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            final var name = keywords.get(i).getIdentifier();
+            for (int j = 0; j < name.length(); j++) {
+                hashes[i] = hash(hashes[i], name.charAt(j));
+            }
+        }
+
+        // 哈希值相同的关键字无论乘数为何都会落在同一个槽中
+        if (Arrays.stream(hashes).distinct().count() < hashes.length) {
+            useFallback(keywords);
+            return;
+        }
+
+        // 从能容纳所有关键字的最小的 2 的幂开始, 逐个尝试乘数, 找不到就扩大表再找
+        var bits = 1;
+        while ((1 << bits) < keywords.size() * 2) {
+            bits++;
+        }
+
+        for (; bits <= MAX_BITS; bits++) {
+            for (int attempt = 0; attempt < ATTEMPTS_PER_SIZE; attempt++) {
+                // 只尝试奇数乘数
+                final var candidate = 0x9E3779B9 + attempt * 2;
+                final var candidateShift = 32 - bits;
+                final var slots = new TokenKind[1 << bits];
+                var collided = false;
+                for (int i = 0; i < hashes.length && !collided; i++) {
+                    final var slot = (hashes[i] * candidate) >>> candidateShift;
+                    collided = slots[slot] != null;
+                    slots[slot] = keywords.get(i);
+                }
+
+                if (!collided) {
+                    this.multiplier = candidate;
+                    this.shift = candidateShift;
+                    this.kinds = slots;
+                    this.names = new String[slots.length];
+                    for (int i = 0; i < slots.length; i++) {
+                        names[i] = slots[i] == null ? null : slots[i].getIdentifier();
+                    }
+                    return;
+                }
+            }
+        }
+        useFallback(keywords);
+    }
+
+    private void useFallback(ArrayList<TokenKind> keywords) {
+        fallback = new HashMap<>();
+        for (final var kind : keywords) {
+            fallback.put(kind.getIdentifier(), kind);
+        }
+    }
+
+    private static boolean isIdentifierLike(String id) {
+        if (id.isEmpty() || CharClass.of(id.charAt(0)) != CharClass.LETTER) {
+            return false;
+        }
+
+        for (int i = 1; i < id.length(); i++) {
+            if (!CharClass.isLetterOrDigit(id.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int multiplier;
+    private int shift;
+    private TokenKind[] kinds;
+    private String[] names;
+    // 找不到完美哈希时使用, 否则为 null
+    private Map<String, TokenKind> fallback = null;
+}
@@ -0,0 +1,61 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.Diagnostics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * 比较逐字符扫描与 {@link ScanKernel} 批量扫描的词法分析吞吐量
+ * <br>
+ * 用法: {@code java --add-modules jdk.incubator.vector cn.edu.hitsz.compiler.lexer.LexerBenchmark <源文件> [轮数]}.
+ * 每种方式各分析若干轮, 取最快一轮的结果, 以 MB/s 输出. 源文件中的非法字符只记入诊断信息而不输出,
+ * 但仍会计入耗时, 因此测量时应使用没有非法字符的源文件.
+ */
+public class LexerBenchmark {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: LexerBenchmark <source file> [rounds]");
+            return;
+        }
+
+        TokenKind.loadTokenKinds();
+        final var source = Files.readString(Paths.get(args[0]));
+        final var rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final var megabytes = source.length() / (1024.0 * 1024.0);
+
+        final var scalar = bestSeconds(source, false, rounds);
+        System.out.printf("scalar: %.1f MB/s%n", megabytes / scalar);
+
+        if (ScanKernel.forSource("") == null) {
+            System.out.println("vector: unavailable (run with --add-modules jdk.incubator.vector)");
+            return;
+        }
+        final var vector = bestSeconds(source, true, rounds);
+        System.out.printf("vector: %.1f MB/s (%.2fx)%n", megabytes / vector, scalar / vector);
+    }
+
+    /**
+     * 与 {@link LexicalAnalyzer#run()} 一样, 计时包含构造扫描核心 (复制源文本) 的开销
+     */
+    private static double bestSeconds(String source, boolean useKernel, int rounds) {
+        var best = Long.MAX_VALUE;
+        var tokenCount = 0;
+        for (int round = 0; round < rounds; round++) {
+            final var begin = System.nanoTime();
+            final var kernel = useKernel ? ScanKernel.forSource(source) : null;
+            final var tokens = new TokenBuffer(source);
+            final var scanner = new TokenScanner(source, 0, source.length(), new SymbolTable(), new Diagnostics(),
+                    kernel);
+            while (scanner.advance()) {
+                scanner.appendTo(tokens);
+            }
+            best = Math.min(best, System.nanoTime() - begin);
+            tokenCount = tokens.size();
+        }
+        System.out.printf("%d tokens, ", tokenCount);
+        return best / 1e9;
+    }
+}
@@ -0,0 +1,189 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.Diagnostics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 检查各种词法分析方式得到的结果是否一致, 由 scripts/check.sh 调用
+ * <br>
+ * 用法: {@code java [--add-modules jdk.incubator.vector] cn.edu.hitsz.compiler.lexer.LexerCheck <源文件>...}.
+ * 以逐字符扫描的 token 序列与诊断信息为准, 对每个源文件依次比较:
+ * {@link ScanKernel} 批量扫描 (未启用 jdk.incubator.vector 时跳过), 把源文本重复到超过并行阈值后
+ * {@link LexicalAnalyzer#run()} 的分块并行分析 (公共 ForkJoinPool 的并行度为 1 时退化为串行),
+ * {@link LexicalAnalyzer#getTokenStream()} 按需分析的词法单元流, 以及若干次随机的 {@link LexicalAnalyzer#applyEdit}
+ * 之后的增量结果. 有不一致时输出第一处差异并以非零状态退出.
+ */
+public class LexerCheck {
+    private static final int EDITS = 200;
+    private static final String[] EDIT_PIECES = {"a", "b1", " ", "\n", ";", "=", "+", "(", "12", "int ", "return ", "@", "é", "😀"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: LexerCheck <source file>...");
+            return;
+        }
+
+        TokenKind.loadTokenKinds();
+        var failed = false;
+        for (final var path : args) {
+            // 与 LexicalAnalyzer#loadFile 读入的文本相同
+            final var source = String.join("\n", Files.readAllLines(Paths.get(path)));
+            failed |= !check(path, source);
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean check(String path, String source) throws IOException {
+        final var expected = scan(source, null);
+        var ok = true;
+
+        final var kernel = ScanKernel.forSource(source);
+        if (kernel == null) {
+            System.out.printf("%s: vector kernel unavailable, skipped%n", path);
+        } else {
+            ok &= report(path, "vector kernel", expected, scan(source, kernel));
+        }
+
+        final var repeated = new StringBuilder(source);
+        while (repeated.length() <= LexicalAnalyzer.PARALLEL_THRESHOLD) {
+            repeated.append('\n').append(source);
+        }
+        final var repeatedText = repeated.toString();
+        final var file = Files.createTempFile("lexer-check", ".txt");
+        try {
+            Files.writeString(file, repeatedText);
+            final var diagnostics = new Diagnostics();
+            final var lexer = new LexicalAnalyzer(new SymbolTable(), diagnostics);
+            lexer.loadFile(file.toString());
+            lexer.run();
+            ok &= report(path, "parallel run", scan(repeatedText, null),
+                    describe((TokenBuffer) lexer.getTokens(), diagnostics));
+        } finally {
+            Files.delete(file);
+        }
+
+        // 词法单元流中的 Token 不带位置
+        final var withoutPositions = new ArrayList<String>();
+        for (int i = 0; i < expected.size() - 1; i++) {
+            withoutPositions.add(expected.get(i).substring(expected.get(i).indexOf(' ') + 1));
+        }
+        withoutPositions.add(expected.get(expected.size() - 1));
+        ok &= report(path, "token stream", withoutPositions, stream(source));
+        ok &= checkEdits(path, source);
+        return ok;
+    }
+
+    /**
+     * 对源文本做若干次随机编辑 (不切开代理对), 每次编辑后与重新扫描的结果比较
+     */
+    private static boolean checkEdits(String path, String source) throws IOException {
+        final var file = Files.createTempFile("lexer-check", ".txt");
+        try {
+            Files.writeString(file, source);
+            final var diagnostics = new Diagnostics();
+            final var lexer = new LexicalAnalyzer(new SymbolTable(), diagnostics);
+            lexer.loadFile(file.toString());
+            lexer.run();
+
+            final var random = new Random(source.length());
+            final var text = new StringBuilder(source);
+            for (int edit = 0; edit < EDITS; edit++) {
+                var offset = random.nextInt(text.length() + 1);
+                if (offset > 0 && offset < text.length() && Character.isLowSurrogate(text.charAt(offset))) {
+                    offset--;
+                }
+                var removed = Math.min(random.nextInt(4), text.length() - offset);
+                if (offset + removed < text.length() && Character.isLowSurrogate(text.charAt(offset + removed))) {
+                    removed++;
+                }
+                final var inserted = new StringBuilder();
+                for (int i = random.nextInt(3); i > 0; i--) {
+                    inserted.append(EDIT_PIECES[random.nextInt(EDIT_PIECES.length)]);
+                }
+
+                text.replace(offset, offset + removed, inserted.toString());
+                lexer.applyEdit(offset, removed, inserted.toString());
+                final var name = "edit %d [%d, %d) -> %s".formatted(edit, offset, offset + removed,
+                        inserted.toString().replace("\n", "\\n"));
+                if (!report(path, name, scan(text.toString(), null),
+                        describe((TokenBuffer) lexer.getTokens(), diagnostics))) {
+                    return false;
+                }
+            }
+            System.out.printf("%s: %d incremental edits ok%n", path, EDITS);
+            return true;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * @return 逐个 token 的类型, 起止位置与文本, 最后是各条诊断信息
+     */
+    private static List<String> scan(String source, ScanKernel kernel) {
+        final var diagnostics = new Diagnostics();
+        final var tokens = new TokenBuffer(source);
+        final var scanner = new TokenScanner(source, 0, source.length(), new SymbolTable(), diagnostics, kernel);
+        while (scanner.advance()) {
+            scanner.appendTo(tokens);
+        }
+        return describe(tokens, diagnostics);
+    }
+
+    private static List<String> describe(TokenBuffer tokens, Diagnostics diagnostics) {
+        final var result = new ArrayList<String>();
+        // 只比较真正的 token, 不含 run 追加的 EOF
+        final var count = tokens.size() > 0 && tokens.getCode(tokens.size() - 1) == TokenKind.eof().getCode()
+                ? tokens.size() - 1 : tokens.size();
+        for (int i = 0; i < count; i++) {
+            result.add("%d-%d %s %s".formatted(tokens.getStart(i), tokens.getEnd(i), tokens.getKind(i), tokens.getText(i)));
+        }
+        result.add(String.join("; ", diagnostics.format()));
+        return result;
+    }
+
+    private static List<String> stream(String source) throws IOException {
+        final var file = Files.createTempFile("lexer-check", ".txt");
+        try {
+            Files.writeString(file, source);
+            final var diagnostics = new Diagnostics();
+            final var lexer = new LexicalAnalyzer(new SymbolTable(), diagnostics);
+            lexer.loadFile(file.toString());
+            final var result = new ArrayList<String>();
+            for (final var token : lexer.getTokenStream()) {
+                result.add("%s %s".formatted(token.getKind(), token.getText()));
+            }
+            // 以诊断信息代替末尾的 EOF
+            result.set(result.size() - 1, String.join("; ", diagnostics.format()));
+            return result;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static boolean report(String path, String name, List<String> expected, List<String> actual) {
+        var index = 0;
+        while (index < expected.size() && index < actual.size() && expected.get(index).equals(actual.get(index))) {
+            index++;
+        }
+        if (index == expected.size() && index == actual.size()) {
+            if (!name.startsWith("edit ")) {
+                System.out.printf("%s: %s ok (%d tokens)%n", path, name, expected.size() - 1);
+            }
+            return true;
+        }
+
+        System.out.printf("%s: %s differs at %d: expected %s, got %s%n", path, name, index,
+                index < expected.size() ? expected.get(index) : "<end>", index < actual.size() ? actual.get(index) : "<end>");
+        return false;
+    }
+}
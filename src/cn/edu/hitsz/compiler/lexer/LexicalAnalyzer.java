@@ -1,13 +1,19 @@
 package cn.edu.hitsz.compiler.lexer;
 
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.Diagnostics;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -20,19 +26,28 @@ import java.util.stream.StreamSupport;
  */
 public class LexicalAnalyzer {
     private final SymbolTable symbolTable;
-    private String s;
-    public List<Token> tokens = new ArrayList<>();
+    private final Diagnostics diagnostics;
+    // 自己创建的收集器在每次分析结束时输出, 外部传入的则由调用者在编译结束时统一输出
+    private final boolean ownsDiagnostics;
+    private CharSequence s;
+    private TokenBuffer tokens;
 
     public LexicalAnalyzer(SymbolTable symbolTable) {
-        this.symbolTable = symbolTable;
+        this(symbolTable, new Diagnostics(), true);
+    }
+
+    /**
+     * @param symbolTable 符号表
+     * @param diagnostics 错误信息的收集器, 由调用者负责输出
+     */
+    public LexicalAnalyzer(SymbolTable symbolTable, Diagnostics diagnostics) {
+        this(symbolTable, diagnostics, false);
     }
 
-    enum Status {
-        SKIP,
-        PUNCTUATION,
-        LETTER,
-        DIGIT,
-        ERROR,
+    private LexicalAnalyzer(SymbolTable symbolTable, Diagnostics diagnostics, boolean ownsDiagnostics) {
+        this.symbolTable = symbolTable;
+        this.diagnostics = diagnostics;
+        this.ownsDiagnostics = ownsDiagnostics;
     }
 
     /**
@@ -46,80 +61,152 @@ public class LexicalAnalyzer {
         this.s = buffer.lines().collect(Collectors.joining("\n"));
     }
 
+    /**
+     * 以内存映射的方式加载文件内容, 不将其解码为 String, 适用于非常大的源文件
+     * <br>
+     * 加载后既可以照常调用 {@link #run()}, 也可以通过 {@link #getTokenStream()} 按需取得词法单元.
+     *
+     * @param path 路径
+     * @throws IOException
+     * @see MappedSource
+     */
+    public void mapFile(String path) throws IOException {
+        this.s = MappedSource.map(path);
+    }
+
     /**
      * 执行词法分析, 准备好用于返回的 token 列表 <br>
      * 需要维护实验一所需的符号表条目, 而得在语法分析中才能确定的符号表条目的成员可以先设置为 null
      * 
      * @throws IOException
+     * @throws Diagnostics.LimitExceededException 错误数超过收集器的上限
      */
     public void run() throws IOException {
-
-        Status now;
-        for (int i = 0; i < this.s.length(); i++) {
-            char c = this.s.charAt(i);
-            // just skip special chars
-            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
-                now = Status.SKIP;
-            } else if (c == ',' || c == ';' || c == '=' || c == '+' || c == '-' || c == '*' || c == '/' || c == '('
-                    || c == ')') {
-                now = Status.PUNCTUATION;
-            } else if (Character.isLetter(c)) {
-                now = Status.LETTER;
-            } else if (Character.isDigit(c)) {
-                now = Status.DIGIT;
+        try {
+            final var length = this.s.length();
+            final var parallelism = ForkJoinPool.getCommonPoolParallelism();
+            if (length < PARALLEL_THRESHOLD || parallelism <= 1) {
+                tokens = new TokenBuffer(this.s);
+                final var scanner =
+                        new TokenScanner(this.s, 0, length, symbolTable, diagnostics, ScanKernel.forSource(this.s));
+                while (scanner.advance()) {
+                    scanner.appendTo(tokens);
+                }
             } else {
-                now = Status.ERROR;
+                tokens = runInChunks(splitAtSemicolons(Math.max(MIN_CHUNK_SIZE, length / (parallelism * 4))));
             }
+            tokens.addSimple(TokenKind.eof().getCode(), length, length);
+        } finally {
+            emitOwnDiagnostics();
+        }
+    }
 
-            switch (now) {
-                case SKIP -> {}
-                case PUNCTUATION -> {
-                    if (c == ';')
-                        tokens.add(Token.simple("Semicolon"));
-                    else
-                        tokens.add(Token.simple(String.valueOf(c)));
+    private void emitOwnDiagnostics() {
+        if (ownsDiagnostics) {
+            diagnostics.emit();
+        }
+    }
 
-                }
-                case LETTER -> {
-                    int p = i;
-                    while (p + 1 < this.s.length() && Character.isLetterOrDigit(this.s.charAt(p + 1))) {
-                        ++p;
-                    }
-                    String v = this.s.substring(i, p + 1);
-                    if (TokenKind.isAllowed(v)) {
-                        tokens.add(Token.simple(v));
-                    } else {
-                        tokens.add(Token.normal("id", v));
-                        if (!symbolTable.has(v)) {
-                            symbolTable.add(v);
-                        }
-                    }
-                    i = p;
+    // 小于该长度的输入不值得并行分析
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+    private static final int MIN_CHUNK_SIZE = 1 << 18;
 
-                }
-                case DIGIT -> {
-                    int p = i;
-                    while (p + 1 < this.s.length() && Character.isDigit(this.s.charAt(p + 1))) {
-                        ++p;
-                    }
-                    tokens.add(Token.normal("IntConst", this.s.substring(i, p + 1)));
-                    i = p;
+    /**
+     * 将源文本切分为若干块. 分号在源语言中总是单独构成一个词法单元, 因此在分号之后切分不会切断任何词法单元.
+     *
+     * @param chunkSize 期望的块大小
+     * @return 各块的边界, 第 i 块为 [bounds[i], bounds[i + 1])
+     */
+    private int[] splitAtSemicolons(int chunkSize) {
+        final var length = this.s.length();
+        final var bounds = new ArrayList<Integer>();
+        bounds.add(0);
+        var from = 0;
+        while (length - from > chunkSize) {
+            var cut = from + chunkSize;
+            while (cut < length && this.s.charAt(cut - 1) != ';') {
+                cut++;
+            }
+            bounds.add(cut);
+            from = cut;
+        }
+        if (from < length) {
+            bounds.add(length);
+        }
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
 
+    /**
+     * 在 ForkJoinPool 上并行分析各块, 再按顺序拼接各块的结果
+     * <br>
+     * 各块先把标识符驻留到各自私有的符号表中, 拼接时再按块的顺序依次驻留到共享的符号表, 并改写 token 中的符号 id.
+     * 这样分配出的 id 与串行分析时完全一致 (都是标识符首次出现的次序), 符号表的输出也不受并行影响.
+     * 各块的错误信息先收集在各自的收集器中, 最后按块的顺序合并, 并把块内的行号换算为全文的行号.
+     *
+     * @param bounds 各块的边界
+     * @return 拼接后的 token 序列 (不含 EOF)
+     */
+    private TokenBuffer runInChunks(int[] bounds) {
+        final var source = this.s;
+        final var tasks = new ArrayList<Callable<TokenBuffer>>();
+        final var chunkTables = new SymbolTable[bounds.length - 1];
+        final var chunkDiagnostics = new Diagnostics[bounds.length - 1];
+        // 扫描核心只读, 各块共用一个, 避免重复复制源文本
+        final var kernel = ScanKernel.forSource(source);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            final var from = bounds[i];
+            final var to = bounds[i + 1];
+            final var chunkTable = chunkTables[i] = new SymbolTable();
+            final var chunkDiagnostic = chunkDiagnostics[i] = diagnostics.fork();
+            tasks.add(() -> {
+                final var chunk = new TokenBuffer(source);
+                final var scanner = new TokenScanner(source, from, to, chunkTable, chunkDiagnostic, kernel);
+                while (scanner.advance()) {
+                    scanner.appendTo(chunk);
                 }
-                case ERROR -> {
-                    System.out.println("Error: invalid char " + c);
+                return chunk;
+            });
+        }
+
+        final var result = new TokenBuffer(source);
+        final var futures = ForkJoinPool.commonPool().invokeAll(tasks);
+        // 只有块中有错误时才需要知道它之前有多少行, 因此换行符也按需数到该块的起点为止
+        var linesBefore = 0;
+        var countedUpTo = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            if (chunkDiagnostics[i].getErrorCount() > 0) {
+                for (; countedUpTo < bounds[i]; countedUpTo++) {
+                    if (source.charAt(countedUpTo) == '\n') {
+                        linesBefore++;
+                    }
                 }
+                // 超过错误数上限时在此抛出
+                diagnostics.addAll(chunkDiagnostics[i], linesBefore);
+            }
 
+            final TokenBuffer chunk;
+            try {
+                chunk = futures.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                if (e.getCause() instanceof Diagnostics.LimitExceededException limitExceeded) {
+                    throw limitExceeded;
+                }
+                throw new RuntimeException("Lexing failed in chunk " + i, e);
             }
 
+            final var remap = new int[chunkTables[i].size()];
+            for (int id = 0; id < remap.length; id++) {
+                remap[id] = symbolTable.intern(chunkTables[i].get(id).getText());
+            }
+            result.addAll(chunk, remap);
         }
-        tokens.add(Token.eof());
+        return result;
     }
 
     /**
      * 获得词法分析的结果, 保证在调用了 run 方法之后调用
      *
-     * @return Token 列表
+     * @return Token 列表, 实际类型为 {@link TokenBuffer}
      */
     public Iterable<Token> getTokens() {
         // DONE: 从词法分析过程中获取 Token 列表
@@ -129,6 +216,184 @@ public class LexicalAnalyzer {
         return tokens;
     }
 
+    /**
+     * 对源文本做一次编辑, 并增量地更新 token 序列, 符号表与错误信息, 保证在调用了 run 方法之后调用
+     * <br>
+     * 从编辑位置之前最后一个不受影响的 token 之后开始重新扫描, 直到扫描出的 token 与编辑范围之后的某个旧 token
+     * 完全相同 (类型与平移后的起止位置都相同) 为止; 由于词法单元的识别只取决于其起始位置之后的文本,
+     * 此后的旧 token 必然与重新分析的结果一致, 只需平移其位置.
+     * <br>
+     * 第一次编辑时源文本被复制为 {@link EditableSource}, token 序列也改用带空隙的存放方式 (见 {@link TokenBuffer}),
+     * 此后源文本与 token 序列都在原地修改, 行号由换行符索引求得. 因此一次编辑的开销只取决于编辑本身及其波及的词法单元,
+     * 以及与上一次编辑的距离, 与文件大小无关.
+     * <br>
+     * 重新扫描范围内的非法字符错误会被撤回, 换成重新扫描的结果, 其后的错误平移偏移与行号.
+     * 同一行内重复的非法字符错误会被合并为一条记录, 因此重新扫描的范围总会扩展到整行, 使这样的记录整条撤回;
+     * 收集器容量已满而未能保存的记录无法撤回. 语法分析等其他阶段的错误不受影响.
+     * <br>
+     * 不再被任何 token 引用的标识符会从符号表中删除. 语义分析得到的符号信息不会被增量维护, 需要重新进行语法与语义分析.
+     *
+     * @param offset        编辑的起始位置
+     * @param removedLength 被删除的字符数
+     * @param inserted      插入的文本
+     */
+    public void applyEdit(int offset, int removedLength, String inserted) {
+        if (tokens == null) {
+            throw new RuntimeException("Lexer must run before applying edits");
+        }
+        final var oldLength = s.length();
+        if (offset < 0 || removedLength < 0 || offset + removedLength > oldLength) {
+            throw new IndexOutOfBoundsException("Edit [%d, %d) out of source of length %d"
+                    .formatted(offset, offset + removedLength, oldLength));
+        }
+        if (!(s instanceof EditableSource)) {
+            s = new EditableSource(s);
+            countSymbolRefs();
+        }
+        final var source = (EditableSource) s;
+        final var invalidChar = Diagnostics.Code.INVALID_CHAR;
+
+        // 结束于编辑位置之前的 token 不受影响; 恰好结束于编辑位置的 token 可能与插入的文本连成一个词法单元
+        var first = tokens.firstEndingAtOrAfter(offset);
+        var scanFrom = first == 0 ? 0 : tokens.getEnd(first - 1);
+        if (diagnostics.hasRecordOnLine(invalidChar, source.lineOf(scanFrom))) {
+            // 该行的非法字符错误可能被合并成一条记录, 需整行重新扫描才能整条撤回; token 不跨行
+            scanFrom = source.lineStart(scanFrom);
+            first = tokens.firstStartingAtOrAfter(scanFrom);
+        }
+        // 只有完全位于被删除部分之后的旧 token 才可能与重新扫描的结果对齐
+        final var eofIndex = tokens.size() - 1;
+        var next = tokens.firstStartingAtOrAfter(offset + removedLength);
+        var resync = eofIndex;
+
+        final var delta = inserted.length() - removedLength;
+        final var newlineDelta = countNewlines(inserted, 0, inserted.length())
+                - countNewlines(source, offset, offset + removedLength);
+        source.replace(offset, removedLength, inserted);
+        final var insertedEnd = offset + inserted.length();
+
+        final var relexed = new TokenBuffer(source);
+        // 重新扫描时不因错误过多而中止, 以免 token 序列与符号表停留在不一致的状态; 上限在合并时再检查
+        final var editDiagnostics = new Diagnostics();
+        final var scanner = new TokenScanner(source, scanFrom, source.length(), symbolTable, editDiagnostics, null);
+        while (scanner.advance()) {
+            if (scanner.start >= insertedEnd) {
+                final var oldStart = scanner.start - delta;
+                while (next < eofIndex && tokens.getStart(next) < oldStart) {
+                    next++;
+                }
+                // 对齐处同样不能切开一行中被合并的非法字符错误
+                if (next < eofIndex && scanner.sameAs(tokens, next, delta)
+                        && (startsUnchangedLine(source, scanner.start, insertedEnd)
+                            || !diagnostics.hasRecordOnLine(invalidChar, source.lineOf(scanner.start) - newlineDelta))) {
+                    resync = next;
+                    break;
+                }
+            }
+            scanner.appendTo(relexed);
+        }
+        final var oldResyncStart = resync == eofIndex ? oldLength : tokens.getStart(resync);
+
+        // 先登记新 token 的引用, 再释放旧 token 的引用, 使编辑前后都出现的标识符不会被删除
+        for (int i = 0; i < relexed.size(); i++) {
+            final var id = relexed.getSymbolId(i);
+            if (id != Token.NO_SYMBOL) {
+                if (id >= symbolRefs.length) {
+                    symbolRefs = Arrays.copyOf(symbolRefs, Math.max(id + 1, symbolRefs.length * 2));
+                }
+                symbolRefs[id]++;
+            }
+        }
+        for (int i = first; i < resync; i++) {
+            final var id = tokens.getSymbolId(i);
+            if (id != Token.NO_SYMBOL && --symbolRefs[id] == 0) {
+                symbolTable.remove(id);
+            }
+        }
+
+        tokens.replace(first, resync, relexed, source);
+
+        try {
+            // 扫描器的行号从 scanFrom 所在行算起; 超过错误数上限时在此抛出
+            diagnostics.replaceRange(invalidChar, scanFrom, oldResyncStart, editDiagnostics,
+                    source.lineOf(scanFrom) - 1, delta, newlineDelta);
+        } finally {
+            emitOwnDiagnostics();
+        }
+    }
+
+    private static int countNewlines(CharSequence text, int from, int to) {
+        var count = 0;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return position 处是否为所在行第一个非空白字符, 且该行的行首不在插入的文本中, 即编辑前也是如此
+     */
+    private static boolean startsUnchangedLine(CharSequence text, int position, int insertedEnd) {
+        var i = position - 1;
+        while (i >= insertedEnd && text.charAt(i) != '\n' && CharClass.of(text.charAt(i)) == CharClass.SKIP) {
+            i--;
+        }
+        return i >= insertedEnd && text.charAt(i) == '\n';
+    }
+
+    // 以符号 id 为下标, 各符号被 token 引用的次数; 只在第一次增量编辑时才统计
+    private int[] symbolRefs;
+
+    private void countSymbolRefs() {
+        symbolRefs = new int[symbolTable.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            final var id = tokens.getSymbolId(i);
+            if (id != Token.NO_SYMBOL) {
+                symbolRefs[id]++;
+            }
+        }
+    }
+
+    /**
+     * 获得按需分析的词法单元流, 无需先调用 run 方法
+     * <br>
+     * 每次迭代都会从头扫描源文本, 并只在取下一个 token 时才向前分析, 不会把 token 物化为列表.
+     * 配合 {@link #mapFile(String)} 使用时, 整个词法分析的堆内存占用与输入大小无关.
+     * 遇到的标识符在被取出时才加入符号表.
+     *
+     * @return 以 EOF 结尾的词法单元流
+     */
+    public Iterable<Token> getTokenStream() {
+        final var source = this.s;
+        return () -> new Iterator<>() {
+            private final TokenScanner scanner =
+                    new TokenScanner(source, 0, source.length(), symbolTable, diagnostics, ScanKernel.forSource(source));
+            private boolean eofReturned = false;
+
+            @Override
+            public boolean hasNext() {
+                return !eofReturned;
+            }
+
+            @Override
+            public Token next() {
+                if (eofReturned) {
+                    throw new NoSuchElementException();
+                }
+
+                if (!scanner.advance()) {
+                    eofReturned = true;
+                    emitOwnDiagnostics();
+                    return Token.eof();
+                }
+
+                return scanner.toToken();
+            }
+        };
+    }
+
     public void dumpTokens(String path) {
         FileUtils.writeLines(
                 path,
@@ -0,0 +1,80 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 以内存映射方式打开的源文件
+ * <br>
+ * 通过 {@link FileChannel#map} 将整个文件映射进地址空间, 不解码为 String, 按字节直接作为 ASCII 字符读取.
+ * 文件内容由操作系统按页换入换出, 因此堆内存占用与文件大小无关.
+ * <br>
+ * 源语言只由 ASCII 字符构成, 因此该模式只支持 ASCII 输入: 大于 0x7F 的字节一律读作 U+FFFD,
+ * 从而会被词法分析器当作非法字符报告.
+ */
+public final class MappedSource implements CharSequence {
+    private static final char NON_ASCII = '�';
+
+    /**
+     * 以只读方式映射给定路径的文件
+     *
+     * @param path 文件路径
+     * @return 映射出的源文件
+     * @throws IOException 打开或映射文件失败
+     */
+    public static MappedSource map(String path) throws IOException {
+        try (final var channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            final var size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new RuntimeException("File too large to map: " + path);
+            }
+
+            // 映射在 channel 关闭后依然有效
+            return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    @Override
+    public int length() {
+        return buffer.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        final var b = buffer.get(index);
+        return b < 0 ? NON_ASCII : (char) b;
+    }
+
+    /**
+     * 只有在需要词素文本时才会调用, 此时才真正在堆上构造出 String
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        final var bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    /**
+     * @return 映射出的字节, 供 {@link ScanKernel} 直接按批读取
+     */
+    ByteBuffer bytes() {
+        return buffer;
+    }
+
+    private MappedSource(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    private final MappedByteBuffer buffer;
+}
@@ -0,0 +1,93 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 批量查找同类字符段结尾的扫描核心
+ * <br>
+ * {@link TokenScanner} 在跳过空白与延伸整数常量时需要找到同类字符段的结尾. 扫描核心一次检查多个字节,
+ * 返回从 from 起第一个不属于该类的位置. 核心只识别 ASCII 字符, 遇到非 ASCII 字符即停下,
+ * 由 {@link TokenScanner} 照常逐字符处理其后的部分, 因此使用与否不影响词法分析的结果.
+ * <br>
+ * 目前唯一的实现是基于 jdk.incubator.vector 的 {@code VectorScanKernel}, 它单独放在 src-vector 源码目录中,
+ * 以免整个 src 目录必须带着该模块编译. 代码中不直接引用它, 而是通过反射加载, 这样未编译 src-vector 或运行时不带该模块时
+ * (如默认的 scripts/run.sh) 都不受影响, 词法分析器退回到原有的逐字符扫描.
+ * 启用时需用 {@code --add-modules jdk.incubator.vector} 把 src-vector 编译到同一个类路径上, 运行时也加上该参数
+ * (scripts/run.sh 在 LEXER_VECTOR=1 时这样做). 此时 JVM 启动时会在标准错误上打印
+ * "WARNING: Using incubator modules: jdk.incubator.vector", 这是孵化模块的正常提示. 也可以用
+ * {@code -Dlexer.vector=false} 强制关闭.
+ */
+interface ScanKernel {
+    /**
+     * @param from 起始位置
+     * @param to   结束位置 (不含)
+     * @return [from, to) 中第一个不是空白字符的位置, 不存在时返回 to
+     */
+    int skipWhitespace(int from, int to);
+
+    /**
+     * @param from 起始位置
+     * @param to   结束位置 (不含)
+     * @return [from, to) 中第一个不是 ASCII 数字的位置, 不存在时返回 to
+     */
+    int digitsEnd(int from, int to);
+
+    /**
+     * 为源文本构造扫描核心. String 等源文本会先按每个 char 一个字节复制, 超出 Latin-1 的字符 (包括代理对的两半)
+     * 都变为非 ASCII 的 0x80, 同样会让核心停下; 内存映射的源文件则直接使用其映射的字节.
+     *
+     * @param source 源文本
+     * @return 扫描核心; 当前环境不支持时返回 null
+     */
+    static ScanKernel forSource(CharSequence source) {
+        final var constructor = Loader.CONSTRUCTOR;
+        if (constructor == null) {
+            return null;
+        }
+
+        final var bytes = source instanceof MappedSource mapped ? mapped.bytes() : ByteBuffer.wrap(latin1Bytes(source));
+        try {
+            return (ScanKernel) constructor.newInstance(bytes);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to create vector scan kernel", e);
+        }
+    }
+
+    /**
+     * 核心的下标必须与源文本的 char 下标一一对应. 不能用 getBytes(ISO_8859_1): 编码器会把一个代理对变为一个 '?',
+     * 此后的字节都与 char 错开一位
+     */
+    private static byte[] latin1Bytes(CharSequence source) {
+        final var length = source.length();
+        final var bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            final var c = source.charAt(i);
+            bytes[i] = c > 0xFF ? (byte) 0x80 : (byte) c;
+        }
+        return bytes;
+    }
+
+    /**
+     * 只在第一次需要时尝试加载向量实现
+     */
+    final class Loader {
+        private static final java.lang.reflect.Constructor<?> CONSTRUCTOR = load();
+
+        private static java.lang.reflect.Constructor<?> load() {
+            if (!Boolean.parseBoolean(System.getProperty("lexer.vector", "true"))) {
+                return null;
+            }
+
+            try {
+                final var kernel = Class.forName("cn.edu.hitsz.compiler.lexer.VectorScanKernel");
+                return kernel.getDeclaredConstructor(ByteBuffer.class);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // 未编译该类, 或运行时没有 jdk.incubator.vector 模块
+                return null;
+            }
+        }
+
+        private Loader() {
+        }
+    }
+}
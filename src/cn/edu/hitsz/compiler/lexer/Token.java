@@ -18,7 +18,7 @@ public class Token {
      * @return 代表 EOF 的 token
      */
     public static Token eof() {
-        return new Token(TokenKind.eof(), "");
+        return new Token(TokenKind.eof(), "", NO_SYMBOL);
     }
 
     /**
@@ -51,7 +51,17 @@ public class Token {
      * @return 具有该 token 类型的一正常 token (带其它文本, 比如标识符/数字文本)
      */
     public static Token normal(TokenKind kind, String text) {
-        return new Token(kind, text);
+        return new Token(kind, text, NO_SYMBOL);
+    }
+
+    /**
+     * @param kind     token 类型
+     * @param text     源文本
+     * @param symbolId 该标识符在符号表中的 id
+     * @return 一个携带符号表 id 的标识符 token
+     */
+    public static Token identifier(TokenKind kind, String text, int symbolId) {
+        return new Token(kind, text, symbolId);
     }
 
     /**
@@ -75,16 +85,30 @@ public class Token {
         return text;
     }
 
+    /**
+     * @return 该 token 对应的符号在符号表中的 id, 不是标识符时为 {@link #NO_SYMBOL}
+     */
+    public int getSymbolId() {
+        return symbolId;
+    }
+
     @Override
     public String toString() {
         return "(%s,%s)".formatted(kind, text);
     }
 
-    private Token(TokenKind kind, String text) {
+    private Token(TokenKind kind, String text, int symbolId) {
         this.kind = kind;
         this.text = text;
+        this.symbolId = symbolId;
     }
 
+    /**
+     * 不对应符号表条目的 token 的 symbolId
+     */
+    public static final int NO_SYMBOL = -1;
+
     private final TokenKind kind;
     private final String text;
+    private final int symbolId;
 }
@@ -0,0 +1,348 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 以并行 int 数组存储的词法单元序列
+ * <br>
+ * 每个位置只记录 token 类型的码点 (见 {@link TokenKind#getCode()}), 其在源文本中的起止位置, 以及标识符在符号表中的 id,
+ * 不为每个 token 构造 {@link Token} 对象, 也不复制其文本. 文本只在调用 {@link #getText(int)} 时才从源文本中截取.
+ * <br>
+ * 为兼容以 {@code Iterable<Token>} 为参数的代码, 该类同时也是一个 token 的视图: 迭代时才按需构造出 Token.
+ * <br>
+ * 为支持增量词法分析, 各数组中留有一段空隙 (与 {@link EditableSource} 相同的 gap buffer): 一次性分析时空隙总在末尾,
+ * 下标即数组下标; {@link #replace} 把空隙移到被替换的位置. 空隙之后的 token 的起止位置以 "位置 - 源文本长度" 的形式存放,
+ * 编辑改变源文本长度时不必逐个平移, 因此替换的开销只取决于替换的 token 数以及与上一次替换的距离.
+ */
+public class TokenBuffer implements Iterable<Token> {
+    public TokenBuffer(CharSequence source) {
+        this.source = source;
+        this.sourceLength = source.length();
+    }
+
+    /**
+     * 追加一个带文本的 token (如标识符, 数字字面量), 其文本即为源文本的 [start, end)
+     *
+     * @param code     token 类型的码点
+     * @param start    在源文本中的起始位置
+     * @param end      在源文本中的结束位置 (不含)
+     * @param symbolId 标识符在符号表中的 id, 不是标识符时为 {@link Token#NO_SYMBOL}
+     */
+    void add(int code, int start, int end, int symbolId) {
+        append(((code + 1) << 1) | HAS_TEXT, start, end, symbolId);
+    }
+
+    /**
+     * 追加一个不带文本的简单 token (如标点, 关键字)
+     *
+     * @param code  token 类型的码点
+     * @param start 在源文本中的起始位置
+     * @param end   在源文本中的结束位置 (不含)
+     */
+    void addSimple(int code, int start, int end) {
+        append((code + 1) << 1, start, end, Token.NO_SYMBOL);
+    }
+
+    /**
+     * 将另一 buffer 中的所有 token 按顺序追加到末尾, 两者需基于同一份源文本
+     *
+     * @param other       另一 buffer
+     * @param symbolRemap other 中的符号 id 到本 buffer 所用符号表中 id 的映射
+     */
+    void addAll(TokenBuffer other, int[] symbolRemap) {
+        moveGap(size);
+        other.moveGap(other.size);
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.kinds, 0, kinds, size, other.size);
+        System.arraycopy(other.starts, 0, starts, size, other.size);
+        System.arraycopy(other.ends, 0, ends, size, other.size);
+        for (int i = 0; i < other.size; i++) {
+            final var symbolId = other.symbolIds[i];
+            symbolIds[size + i] = symbolId == Token.NO_SYMBOL ? Token.NO_SYMBOL : symbolRemap[symbolId];
+        }
+        size += other.size;
+        gapStart = size;
+    }
+
+    /**
+     * 将 [from, to) 处的 token 替换为 replacement 中的所有 token, 用于编辑源文本后的增量词法分析.
+     * 其后的 token 以相对于源文本末尾的形式存放, 位置随源文本长度的变化自动平移
+     *
+     * @param from        被替换部分的起始下标
+     * @param to          被替换部分的结束下标 (不含)
+     * @param replacement 替换成的 token, 需基于 newSource
+     * @param newSource   编辑后的源文本
+     */
+    void replace(int from, int to, TokenBuffer replacement, CharSequence newSource) {
+        // 空隙之后的位置按编辑前的长度换算, 因此先移动空隙, 再更新长度
+        moveGap(to);
+        gapStart = from;
+        size -= to - from;
+        source = newSource;
+        sourceLength = newSource.length();
+
+        replacement.moveGap(replacement.size);
+        final var added = replacement.size;
+        if (gapEnd - gapStart < added) {
+            growGap(added);
+        }
+        System.arraycopy(replacement.kinds, 0, kinds, gapStart, added);
+        System.arraycopy(replacement.starts, 0, starts, gapStart, added);
+        System.arraycopy(replacement.ends, 0, ends, gapStart, added);
+        System.arraycopy(replacement.symbolIds, 0, symbolIds, gapStart, added);
+        gapStart += added;
+        size += added;
+    }
+
+    /**
+     * @param offset 源文本中的位置
+     * @return 第一个结束位置不小于 offset 的 token 的下标, 不存在时返回 size
+     */
+    int firstEndingAtOrAfter(int offset) {
+        return lowerBound(ends, offset);
+    }
+
+    /**
+     * @param offset 源文本中的位置
+     * @return 第一个起始位置不小于 offset 的 token 的下标, 不存在时返回 size
+     */
+    int firstStartingAtOrAfter(int offset) {
+        return lowerBound(starts, offset);
+    }
+
+    /**
+     * @return token 的数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index 下标
+     * @return 该位置 token 类型的码点
+     */
+    public int getCode(int index) {
+        return (kinds[slot(index)] >> 1) - 1;
+    }
+
+    /**
+     * @param index 下标
+     * @return 该位置 token 的类型
+     */
+    public TokenKind getKind(int index) {
+        return TokenKind.fromCode(getCode(index));
+    }
+
+    /**
+     * @param index 下标
+     * @return 该位置 token 在源文本中的起始位置
+     */
+    public int getStart(int index) {
+        return position(starts, index);
+    }
+
+    /**
+     * @param index 下标
+     * @return 该位置 token 在源文本中的结束位置 (不含)
+     */
+    public int getEnd(int index) {
+        return position(ends, index);
+    }
+
+    /**
+     * @param index 下标
+     * @return 该位置 token 对应的符号在符号表中的 id, 不是标识符时为 {@link Token#NO_SYMBOL}
+     */
+    public int getSymbolId(int index) {
+        return symbolIds[slot(index)];
+    }
+
+    /**
+     * 增量编辑过的源文本带有行索引, 可以直接查出行号; 否则从源文本开头数换行符, 只应在报告错误等少数场合使用
+     *
+     * @param index 下标
+     * @return 该位置 token 所在的行号, 从 1 开始
+     */
+    public int getLine(int index) {
+        final var start = getStart(index);
+        if (source instanceof EditableSource editable) {
+            return editable.lineOf(start);
+        }
+        var line = 1;
+        for (int i = 0; i < start; i++) {
+            if (source.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    /**
+     * @param index 下标
+     * @return 该位置 token 是否带文本
+     */
+    boolean hasText(int index) {
+        return (kinds[slot(index)] & HAS_TEXT) != 0;
+    }
+
+    /**
+     * @param index 下标
+     * @return 该位置 token 的文本, 与 {@link Token#getText()} 一致, 简单 token 为空字符串
+     */
+    public String getText(int index) {
+        if (!hasText(index)) {
+            return "";
+        }
+
+        return source.subSequence(getStart(index), getEnd(index)).toString();
+    }
+
+    /**
+     * @param index 下标
+     * @return 该位置的 token, 每次调用都会构造新的 Token 对象
+     */
+    public Token get(int index) {
+        final var kind = getKind(index);
+        if (!hasText(index)) {
+            return Token.simple(kind);
+        }
+        final var symbolId = getSymbolId(index);
+        if (symbolId == Token.NO_SYMBOL) {
+            return Token.normal(kind, getText(index));
+        }
+        return Token.identifier(kind, getText(index), symbolId);
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Token next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    private void append(int kind, int start, int end, int symbolId) {
+        if (gapStart != size) {
+            moveGap(size);
+        }
+        if (size == kinds.length) {
+            ensureCapacity(size + (size >> 1) + 16);
+        }
+
+        kinds[size] = kind;
+        starts[size] = start;
+        ends[size] = end;
+        symbolIds[size] = symbolId;
+        size++;
+        gapStart = size;
+    }
+
+    /**
+     * @return 下标为 index 的 token 在各数组中的位置; 空隙在末尾时即为 index
+     */
+    private int slot(int index) {
+        return index < gapStart ? index : index + (gapEnd - gapStart);
+    }
+
+    private int position(int[] positions, int index) {
+        return index < gapStart ? positions[index] : positions[index + (gapEnd - gapStart)] + sourceLength;
+    }
+
+    private int lowerBound(int[] sorted, int key) {
+        var lo = 0;
+        var hi = size;
+        while (lo < hi) {
+            final var mid = (lo + hi) >>> 1;
+            if (position(sorted, mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 把空隙移到下标 index 处, 开销与移动的距离成正比; 跨过空隙的 token 在绝对位置与相对于末尾的位置之间换算
+     */
+    private void moveGap(int index) {
+        final var gap = gapEnd - gapStart;
+        if (index < gapStart) {
+            for (int i = gapStart - 1; i >= index; i--) {
+                moveSlot(i, i + gap, -sourceLength);
+            }
+        } else {
+            for (int i = gapStart; i < index; i++) {
+                moveSlot(i + gap, i, sourceLength);
+            }
+        }
+        gapEnd += index - gapStart;
+        gapStart = index;
+    }
+
+    private void moveSlot(int from, int to, int positionDelta) {
+        kinds[to] = kinds[from];
+        starts[to] = starts[from] + positionDelta;
+        ends[to] = ends[from] + positionDelta;
+        symbolIds[to] = symbolIds[from];
+    }
+
+    /**
+     * 只在空隙在末尾时调用, 此时扩容不必移动空隙之后的内容
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > kinds.length) {
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            symbolIds = Arrays.copyOf(symbolIds, capacity);
+            gapEnd = capacity;
+        }
+    }
+
+    private void growGap(int required) {
+        final var tail = kinds.length - gapEnd;
+        final var capacity = kinds.length + Math.max(required, (kinds.length >> 3) + 16);
+        kinds = copyWithGap(kinds, capacity, tail);
+        starts = copyWithGap(starts, capacity, tail);
+        ends = copyWithGap(ends, capacity, tail);
+        symbolIds = copyWithGap(symbolIds, capacity, tail);
+        gapEnd = capacity - tail;
+    }
+
+    private int[] copyWithGap(int[] array, int capacity, int tail) {
+        final var grown = new int[capacity];
+        System.arraycopy(array, 0, grown, 0, gapStart);
+        System.arraycopy(array, array.length - tail, grown, capacity - tail, tail);
+        return grown;
+    }
+
+    // kinds 中每一项为 ((码点 + 1) << 1) | 是否带文本, 加一是为了让 EOF 的码点 -1 也能放进去
+    private static final int HAS_TEXT = 1;
+
+    private CharSequence source;
+    // 空隙之后的起止位置以相对于源文本末尾的形式存放, 换算时使用该长度
+    private int sourceLength;
+    private int[] kinds = new int[0];
+    private int[] starts = new int[0];
+    private int[] ends = new int[0];
+    private int[] symbolIds = new int[0];
+    private int size = 0;
+    // 空隙为各数组中的 [gapStart, gapEnd); 没有编辑过时 gapStart 即 size, gapEnd 即数组长度
+    private int gapStart = 0;
+    private int gapEnd = 0;
+}
@@ -0,0 +1,194 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.Diagnostics;
+
+/**
+ * 按需扫描的词法分析核心
+ * <br>
+ * 每次调用 {@link #advance()} 都从当前位置起向后识别出恰好一个词法单元, 不会提前扫描后续内容.
+ * {@link LexicalAnalyzer#run()} 用它一次性分析完整个文件, 流式模式则用它在语法分析拉取 token 时才向前推进.
+ * <br>
+ * 识别结果只以码点与起止位置的形式记录在 {@link #kind}, {@link #start}, {@link #end} 中,
+ * 由调用者决定是写入 {@link TokenBuffer} 还是构造出 {@link Token}.
+ * <br>
+ * 源文本以 {@link CharSequence} 的形式给出, 可以是读入的 String, 也可以是内存映射的 {@link MappedSource}.
+ */
+class TokenScanner {
+    /**
+     * 构造只扫描源文本中 [from, to) 部分的扫描器, 用于并行分块分析
+     *
+     * @param source      源文本
+     * @param from        起始位置
+     * @param to          结束位置 (不含)
+     * @param symbolTable 标识符驻留到的符号表
+     * @param diagnostics 错误信息的收集器, 其中的行号从 from 所在的行算作第 1 行
+     * @param kernel      批量查找字符段结尾的扫描核心, 为 null 时逐字符扫描
+     */
+    TokenScanner(CharSequence source, int from, int to, SymbolTable symbolTable, Diagnostics diagnostics,
+                 ScanKernel kernel) {
+        this.source = source;
+        this.kernel = kernel;
+        this.limit = to;
+        this.symbolTable = symbolTable;
+        this.diagnostics = diagnostics;
+        this.pos = from;
+        this.lineCursor = from;
+    }
+
+    /**
+     * 识别出下一个词法单元
+     *
+     * @return 是否识别出了词法单元; 源文本已扫描完毕时返回 false (不会产生 EOF)
+     */
+    boolean advance() {
+        final var length = limit;
+        while (pos < length) {
+            final var c = source.charAt(pos);
+
+            switch (CharClass.of(c)) {
+                // just skip special chars
+                case CharClass.SKIP -> pos = kernel == null ? pos + 1 : kernel.skipWhitespace(pos, length);
+                case CharClass.PUNCTUATION -> {
+                    accept(PUNCTUATION_CODES[c], pos, pos + 1, false);
+                    return true;
+                }
+                case CharClass.LETTER -> {
+                    final var begin = pos;
+                    var hash = 0;
+                    var p = pos;
+                    // 标识符不交给扫描核心: 计算哈希本就要逐个读取字符, 顺带判断类别更快
+                    while (p < length) {
+                        final var d = source.charAt(p);
+                        if (!CharClass.isLetterOrDigit(d)) {
+                            break;
+                        }
+                        hash = KeywordTable.hash(hash, d);
+                        ++p;
+                    }
+
+                    // 先在源文本上判断是否为关键字, 只有新出现的标识符才需要截取出文本
+                    // hash 的算法与 String.hashCode 一致, 关键字表和符号表都直接使用它
+                    final var keyword = keywords.lookup(source, begin, p, hash);
+                    if (keyword != null) {
+                        accept(keyword.getCode(), begin, p, false);
+                        return true;
+                    }
+
+                    accept(ID_CODE, begin, p, true);
+                    symbolId = symbolTable.intern(source, begin, p, hash);
+                    return true;
+                }
+                case CharClass.DIGIT -> {
+                    // 扫描核心在非 ASCII 字符处停下, 由逐字符扫描接着判断
+                    var p = kernel == null ? pos : kernel.digitsEnd(pos, length);
+                    while (p < length && CharClass.isDigit(source.charAt(p))) {
+                        ++p;
+                    }
+                    accept(INT_CONST_CODE, pos, p, true);
+                    return true;
+                }
+                default -> {
+                    diagnostics.report(Diagnostics.Code.INVALID_CHAR, pos, lineOf(pos), c);
+                    pos++;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * 将识别出的词法单元写入 buffer
+     *
+     * @param buffer 目标 buffer
+     */
+    void appendTo(TokenBuffer buffer) {
+        if (hasText) {
+            buffer.add(kind, start, end, symbolId);
+        } else {
+            buffer.addSimple(kind, start, end);
+        }
+    }
+
+    /**
+     * 判断识别出的词法单元是否与 buffer 中某一 token 相同 (起止位置需平移 delta 后比较)
+     *
+     * @param buffer 另一 token 序列
+     * @param index  另一 token 的下标
+     * @param delta  另一 token 的位置与本扫描器所用位置的差
+     * @return 两者是否相同
+     */
+    boolean sameAs(TokenBuffer buffer, int index, int delta) {
+        return buffer.getCode(index) == kind
+            && buffer.hasText(index) == hasText
+            && buffer.getStart(index) + delta == start
+            && buffer.getEnd(index) + delta == end;
+    }
+
+    /**
+     * @return 由识别出的词法单元构造出的 Token
+     */
+    Token toToken() {
+        final var tokenKind = TokenKind.fromCode(kind);
+        if (!hasText) {
+            return Token.simple(tokenKind);
+        }
+
+        final var text = source.subSequence(start, end).toString();
+        return symbolId == Token.NO_SYMBOL ? Token.normal(tokenKind, text) : Token.identifier(tokenKind, text, symbolId);
+    }
+
+    /**
+     * 行号只在报告错误时才需要, 因此不在扫描时逐字符维护, 而是从上次计算到的位置起向后数换行符
+     */
+    private int lineOf(int offset) {
+        for (; lineCursor < offset; lineCursor++) {
+            if (source.charAt(lineCursor) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    private void accept(int kind, int start, int end, boolean hasText) {
+        this.kind = kind;
+        this.start = start;
+        this.end = end;
+        this.hasText = hasText;
+        this.symbolId = Token.NO_SYMBOL;
+        this.pos = end;
+    }
+
+    /**
+     * 标点符号到码点的映射, 以字符本身为下标
+     */
+    private static final int[] PUNCTUATION_CODES = new int[128];
+    private static final int ID_CODE = TokenKind.fromString("id").getCode();
+    private static final int INT_CONST_CODE = TokenKind.fromString("IntConst").getCode();
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if (CharClass.of(c) == CharClass.PUNCTUATION) {
+                PUNCTUATION_CODES[c] = TokenKind.fromString(c == ';' ? "Semicolon" : String.valueOf(c)).getCode();
+            }
+        }
+    }
+
+    private final CharSequence source;
+    private final int limit;
+    private final SymbolTable symbolTable;
+    private final Diagnostics diagnostics;
+    private final ScanKernel kernel;
+    private final KeywordTable keywords = KeywordTable.getInstance();
+    private int pos;
+    private int lineCursor;
+    private int line = 1;
+
+    // 最近一次识别出的词法单元
+    int kind;
+    int start;
+    int end;
+    boolean hasText;
+    int symbolId;
+}
@@ -2,10 +2,14 @@ package cn.edu.hitsz.compiler.parser;
 
 
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
+import java.util.List;
+
 /**
  * LR 驱动程序动作观察者, 你不应该修改此文件
  * <br>
@@ -16,8 +20,12 @@ import cn.edu.hitsz.compiler.symtab.SymbolTable;
  * 中, 我们只能在自己的代码实现中根据传入的 production 不同再进行动作的分派, 以此来实现 SDT. 关于此接口的一个使用的例子可以参考
  * ProductionCollector 类
  * <br>
- * 注意观察者并不能访问到 LR 驱动程序维护着的状态栈, 观察者之间维护的栈信息也不应该互相访问. 每一个实现该接口的观察者需要自己定义自己需要的
- * 状态信息并维护自己的状态栈.
+ * 注意观察者并不能访问到 LR 驱动程序维护着的状态栈, 观察者之间维护的栈信息也不应该互相访问.
+ * 需要为文法符号记录属性的观察者不必自己维护一个与分析栈同步的栈: 驱动程序在注册时通过 {@link #setAttributeStack(AttributeStack)}
+ * 交出共享的属性栈, 观察者从中申请自己的一列, 在规约时按下标读取产生式体的属性并写入产生式头的综合属性.
+ * <br>
+ * 驱动程序默认不维护符号栈. 确实需要查看驱动程序的符号栈的观察者可以覆盖 {@link #needsSymbolStack()},
+ * 此时驱动程序会为每次移入与规约构造 {@link Symbol}, 并在注册时通过 {@link #setSymbolStack(List)} 交给观察者只读的视图.
  *
  * @see ProductionCollector
  * @see SyntaxAnalyzer
@@ -32,6 +40,20 @@ public interface ActionObserver {
      */
     void whenShift(Status currentStatus, Token currentToken);
 
+    /**
+     * 当驱动程序从 {@link TokenBuffer} 中读取词法单元并执行 Shift 动作时会调用此函数.
+     * <br>
+     * 默认实现会从 buffer 中构造出对应的 Token 并转交给 {@link #whenShift(Status, Token)}.
+     * 不需要完整 Token 对象的观察者可以覆盖此函数, 直接从 buffer 中按下标读取类型与文本, 以免为每个位置分配一个 Token.
+     *
+     * @param currentStatus 当前的状态
+     * @param tokens        词法单元序列
+     * @param index         当前的词法单元在序列中的下标
+     */
+    default void whenShift(Status currentStatus, TokenBuffer tokens, int index) {
+        whenShift(currentStatus, tokens.get(index));
+    }
+
     /**
      * 当驱动程序执行 Reduce 动作时会调用此函数. Goto 到的新状态可以直接从参数中获取:
      * {@code currentStatus.getGoto(production.head()) }
@@ -41,6 +63,22 @@ public interface ActionObserver {
      */
     void whenReduce(Status currentStatus, Production production);
 
+    /**
+     * 分析表消去了单产生式规约 (见 {@link LRTable#shortcutUnitProductions()}) 时, 一次规约之后可能紧接着按若干条形如 A -> B
+     * 的单产生式规约. 对 {@link #acceptsUnitChains()} 返回 true 的观察者, 驱动程序把这样的一串规约合并为这一次调用,
+     * 且只在该观察者关心 production 时调用; units 中只有该观察者关心的单产生式, 一条也不关心时改为调用
+     * {@link #whenReduce(Status, Production)}. 不关心 production 时, 该观察者关心的单产生式照常逐条补发.
+     * <br>
+     * 默认实现转交给 {@link #whenReduce(Status, Production)}, 即忽略途经的单产生式.
+     *
+     * @param currentStatus 当前状态
+     * @param production    待规约的产生式
+     * @param units         紧接着规约且该观察者关心的单产生式, 按规约顺序排列, 不为空
+     */
+    default void whenReduce(Status currentStatus, Production production, List<Production> units) {
+        whenReduce(currentStatus, production);
+    }
+
     /**
      * 当驱动程序执行 Accept 动作时会调用此函数.
      *
@@ -54,4 +92,66 @@ public interface ActionObserver {
      * @param table 符号表
      */
     void setSymbolTable(SymbolTable table);
+
+    /**
+     * 驱动程序在开始分析前对每条产生式调用此函数, 只在规约该观察者关心的产生式时才调用 {@link #whenReduce}.
+     * 不关心的产生式规约时, 该观察者在属性栈中的列对产生式头取默认值 null.
+     *
+     * @param production 产生式
+     * @return 是否需要在规约该产生式时得到通知, 默认需要
+     */
+    default boolean handlesProduction(Production production) {
+        return true;
+    }
+
+    /**
+     * 驱动程序在开始分析前调用此函数, 只在返回 true 时才在移入时调用 {@link #whenShift}.
+     *
+     * @return 是否需要在移入时得到通知, 默认需要
+     */
+    default boolean needsShift() {
+        return true;
+    }
+
+    /**
+     * 注册时驱动程序会调用此函数, 询问该观察者能否接受合并的单产生式规约通知
+     * <br>
+     * 返回 true 时, 途经单产生式的规约只通知一次 {@link #whenReduce(Status, Production, List)}, 各单产生式不再单独通知,
+     * 该观察者在属性栈中的列把产生式体的属性原样作为单产生式头的属性. 无论返回什么, 观察者收到的产生式都由
+     * {@link #handlesProduction} 决定, 返回 true 只改变通知的方式. 返回 false 时驱动程序为每条单产生式补发
+     * {@link #whenReduce(Status, Production)}, 收到的产生式序列与未消去时相同; 被消去的状态已不在表中, 补发时的 currentStatus
+     * 为引发这串规约的状态.
+     *
+     * @return 是否接受合并的通知, 默认不接受
+     */
+    default boolean acceptsUnitChains() {
+        return false;
+    }
+
+    /**
+     * 注册时驱动程序会调用此函数, 询问该观察者是否需要读取驱动程序的符号栈
+     *
+     * @return 是否需要符号栈, 默认不需要
+     */
+    default boolean needsSymbolStack() {
+        return false;
+    }
+
+    /**
+     * 当 {@link #needsSymbolStack()} 返回 true 时, 驱动程序在注册时调用此函数交出符号栈. 栈底在前, 栈顶在后;
+     * 每次回调时它都反映执行该动作之前的栈.
+     *
+     * @param symbolStack 驱动程序符号栈的只读视图
+     */
+    default void setSymbolStack(List<Symbol> symbolStack) {
+    }
+
+    /**
+     * 注册时驱动程序会调用此函数交出共享的属性栈. 需要属性的观察者应在此时通过 {@link AttributeStack#newColumn()}
+     * 申请自己的一列; 没有观察者申请时驱动程序不维护属性栈.
+     *
+     * @param attributes 驱动程序的属性栈
+     */
+    default void setAttributeStack(AttributeStack attributes) {
+    }
 }
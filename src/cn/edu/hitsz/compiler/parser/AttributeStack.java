@@ -0,0 +1,193 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 由驱动程序维护, 各观察者共享的属性栈
+ * <br>
+ * 栈中每一项对应分析栈中的一个文法符号 (不含栈底). 每个观察者在注册时通过 {@link #newColumn()} 申请自己的一列,
+ * 用来存放它关心的属性 (如类型, IR 值), 各观察者的列互不干扰, 也就不必各自再维护一个与分析栈同步的符号栈.
+ * <br>
+ * 驱动程序按如下约定维护该栈:
+ * <ul>
+ *     <li>移入时先压入新的一项 (各列均为 null, 并记下词法单元的符号 id), 再通知观察者;
+ *     观察者在 whenShift 中用 {@link Column#setShifted} 为其设置属性</li>
+ *     <li>规约时产生式体的各符号位于栈顶, 观察者在 whenReduce 中用 {@link Column#rhs(int)} 按下标读取它们的属性,
+ *     用 {@link Column#setHead} 设置产生式头的综合属性 (未设置的列为 null); 所有观察者都被通知后,
+ *     驱动程序才弹出产生式体并压入产生式头</li>
+ *     <li>分析表消去了单产生式规约时, 驱动程序为不接受合并通知的观察者补发单产生式的规约; 接受合并通知的观察者的列
+ *     (见 {@link ActionObserver#acceptsUnitChains()}) 在这些规约中原样保留产生式体的属性</li>
+ * </ul>
+ * 各列以数组存放, 分析过程中不会为每个符号分配对象.
+ */
+public final class AttributeStack {
+    /**
+     * 属性栈中属于某个观察者的一列
+     *
+     * @param <T> 属性的类型
+     */
+    public static final class Column<T> {
+        /**
+         * @param i 产生式体中符号的下标, 从 0 开始
+         * @return 正在规约的产生式体中第 i 个符号的属性
+         */
+        @SuppressWarnings("unchecked")
+        public T rhs(int i) {
+            return (T) values[stack.rhsBase + i];
+        }
+
+        /**
+         * 设置正在规约的产生式头的综合属性, 只应在 whenReduce 中调用
+         *
+         * @param value 属性值
+         */
+        public void setHead(T value) {
+            head = value;
+        }
+
+        /**
+         * 设置刚移入的词法单元的属性, 只应在 whenShift 中调用
+         *
+         * @param value 属性值
+         */
+        public void setShifted(T value) {
+            values[stack.top] = value;
+        }
+
+        private Column(AttributeStack stack, int capacity) {
+            this.stack = stack;
+            this.values = new Object[capacity];
+        }
+
+        private final AttributeStack stack;
+        private Object[] values;
+        private Object head = null;
+        // 补发单产生式规约时是否原样上传属性
+        private boolean passesUnits = false;
+    }
+
+    /**
+     * 申请新的一列, 应在注册观察者时调用
+     *
+     * @param <T> 属性的类型
+     * @return 新的一列
+     */
+    public <T> Column<T> newColumn() {
+        final var column = new Column<T>(this, symbolIds.length);
+        columns.add(column);
+        columnArray = columns.toArray(new Column<?>[0]);
+        return column;
+    }
+
+    /**
+     * @param i 产生式体中符号的下标, 从 0 开始
+     * @return 正在规约的产生式体中第 i 个符号的符号 id; 不是标识符时为 {@link Token#NO_SYMBOL}
+     */
+    public int rhsSymbolId(int i) {
+        return symbolIds[rhsBase + i];
+    }
+
+    //==================== 以下由驱动程序调用 ==============================//
+
+    boolean hasColumns() {
+        return !columns.isEmpty();
+    }
+
+    int columnCount() {
+        return columns.size();
+    }
+
+    /**
+     * 把第 firstColumn 列及之后申请的列标记为在单产生式规约中原样上传属性
+     *
+     * @param firstColumn 第一列的下标
+     */
+    void passUnitsThrough(int firstColumn) {
+        for (int i = firstColumn; i < columns.size(); i++) {
+            columns.get(i).passesUnits = true;
+        }
+    }
+
+    /**
+     * @return 是否所有列都在单产生式规约中原样上传属性, 此时补发单产生式规约不改变属性栈
+     */
+    boolean passesAllUnits() {
+        return columns.stream().allMatch(column -> column.passesUnits);
+    }
+
+    void clear() {
+        top = -1;
+    }
+
+    /**
+     * 为移入的词法单元压入新的一项
+     *
+     * @param symbolId 词法单元的符号 id
+     */
+    void pushToken(int symbolId) {
+        if (++top == symbolIds.length) {
+            grow();
+        }
+        symbolIds[top] = symbolId;
+        for (final var column : columnArray) {
+            column.values[top] = null;
+        }
+    }
+
+    /**
+     * 在通知观察者规约之前调用, 确定产生式体的位置并清空各列待设置的综合属性
+     *
+     * @param length 产生式体的长度
+     */
+    void beginReduce(int length) {
+        rhsBase = top - length + 1;
+        for (final var column : columnArray) {
+            column.head = null;
+        }
+    }
+
+    /**
+     * 在补发单产生式的规约通知之前调用, 代替 {@link #beginReduce}: 产生式体为栈顶的一项,
+     * 原样上传属性的列以它的属性作为待设置的综合属性, 其余的列清空
+     */
+    void beginUnitReduce() {
+        rhsBase = top;
+        for (final var column : columnArray) {
+            column.head = column.passesUnits ? column.values[top] : null;
+        }
+    }
+
+    /**
+     * 在通知观察者规约之后调用, 弹出产生式体并压入带有综合属性的产生式头
+     */
+    void endReduce() {
+        top = rhsBase;
+        if (top == symbolIds.length) {
+            grow();
+        }
+        symbolIds[top] = Token.NO_SYMBOL;
+        for (final var column : columnArray) {
+            column.values[top] = column.head;
+            column.head = null;
+        }
+    }
+
+    private void grow() {
+        final var capacity = symbolIds.length * 2;
+        symbolIds = Arrays.copyOf(symbolIds, capacity);
+        for (final var column : columnArray) {
+            column.values = Arrays.copyOf(column.values, capacity);
+        }
+    }
+
+    private final List<Column<?>> columns = new ArrayList<>();
+    private Column<?>[] columnArray = new Column<?>[0];
+    private int[] symbolIds = new int[64];
+    private int top = -1;
+    // 正在规约的产生式体的第一个符号在栈中的下标
+    private int rhsBase = 0;
+}
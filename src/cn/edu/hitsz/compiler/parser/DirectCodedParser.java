@@ -0,0 +1,32 @@
+package cn.edu.hitsz.compiler.parser;
+
+import java.util.Arrays;
+
+/**
+ * 直接编码的 LR 分析器, 由 {@link ParserGenerator} 根据某张分析表生成
+ * <br>
+ * 生成的子类把分析表展开为 switch 语句, 移入, 规约与 goto 的目标都是常量; 通过
+ * {@link SyntaxAnalyzer#loadDirectCodedParser} 交给驱动程序使用.
+ */
+public abstract class DirectCodedParser {
+    DirectCodedParser() {
+    }
+
+    /**
+     * 从起始状态开始分析, 直到接受或出错
+     *
+     * @param events 驱动程序
+     * @return 是否已接受
+     */
+    abstract boolean parse(ParseEvents events);
+
+    /**
+     * 供生成的代码在状态栈满时调用
+     *
+     * @param stack 状态栈
+     * @return 容量加倍后的状态栈
+     */
+    static int[] grow(int[] stack) {
+        return Arrays.copyOf(stack, stack.length * 2);
+    }
+}
@@ -6,109 +6,105 @@ import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Stack;
+import java.util.Objects;
 
 public class IRGenerator implements ActionObserver {
     public SymbolTable table;
-    private final Stack<Symbol> tokenStack = new Stack<>();
+    // 每个符号对应的 IR 值, 存放在驱动程序的属性栈中
+    private AttributeStack.Column<IRValue> values;
+    // 以符号 id 为下标缓存源语言变量对应的 IRVariable, 同一变量每次出现不必重新构造
+    private IRVariable[] variables = new IRVariable[0];
     private List<Instruction> IR = new ArrayList<>();
 
 
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
-        Symbol cur = new Symbol(currentToken);
-        if(currentToken.getText().matches("^\\d+$")) {
-            cur.value = IRImmediate.of(Integer.parseInt(currentToken.getText()));
-        } else {
-            cur.value = IRVariable.named(currentToken.getText());
+        setShiftedValue(currentToken.getKind(), currentToken.getSymbolId(), currentToken.getText());
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, TokenBuffer tokens, int index) {
+        // 标识符的名字可以从符号表中取得, 只有常量才需要截取文本
+        final var symbolId = tokens.getSymbolId(index);
+        final var text = symbolId == Token.NO_SYMBOL ? tokens.getText(index) : null;
+        setShiftedValue(tokens.getKind(index), symbolId, text);
+    }
+
+    private void setShiftedValue(TokenKind kind, int symbolId, String text) {
+        // 只有标识符与常量才会作为 IR 的操作数
+        // 源程序中恰好写作 "id", "IntConst" 的单词会被词法分析为不带文本的简单 token, 它们不是操作数
+        if(symbolId != Token.NO_SYMBOL) {
+            values.setShifted(variableOf(symbolId));
+        } else if(Objects.equals(kind.getIdentifier(), "IntConst") && !text.isEmpty()) {
+            values.setShifted(IRImmediate.of(Integer.parseInt(text)));
+        }
+    }
+
+    private IRVariable variableOf(int symbolId) {
+        if(symbolId >= variables.length) {
+            variables = Arrays.copyOf(variables, Math.max(symbolId + 1, variables.length * 2));
+        }
+        var variable = variables[symbolId];
+        if(variable == null) {
+            variable = IRVariable.named(table.get(symbolId).getText(), symbolId);
+            variables[symbolId] = variable;
         }
-        tokenStack.push(cur);
+        return variable;
     }
+
     @Override
     public void whenReduce(Status currentStatus, Production production) {
-        Symbol lhs, rhs, cur = new Symbol(production.head());
         IRVariable tmp;
         switch(production.index()) {
-            case 6 -> {
-                rhs = tokenStack.pop();
-                tokenStack.pop();
-                lhs = tokenStack.pop();
-
-                tmp = (IRVariable)lhs.value;
-                cur.value = null;
-                IR.add(Instruction.createMov(tmp, rhs.value));
-                tokenStack.push(cur);
-            }
-            case 7 -> {
-                rhs = tokenStack.pop();
-                tokenStack.pop();
-                cur.value = null;
-                IR.add(Instruction.createRet(rhs.value));
-                tokenStack.push(cur);
-            }
+            case 6 -> // S -> id = E
+                IR.add(Instruction.createMov((IRVariable)values.rhs(0), values.rhs(2)));
+            case 7 -> // S -> return E
+                IR.add(Instruction.createRet(values.rhs(1)));
             case 8 -> {
-                rhs = tokenStack.pop();
-                tokenStack.pop();
-                lhs = tokenStack.pop();
-
-
                 tmp = IRVariable.temp();
-                IR.add(Instruction.createAdd(tmp, lhs.value, rhs.value));
-                cur.value = tmp;
-                tokenStack.push(cur);
+                IR.add(Instruction.createAdd(tmp, values.rhs(0), values.rhs(2)));
+                values.setHead(tmp);
             }
             case 9 -> {
-                rhs = tokenStack.pop();
-                tokenStack.pop();
-                lhs = tokenStack.pop();
-
                 tmp = IRVariable.temp();
-                IR.add(Instruction.createSub(tmp, lhs.value, rhs.value));
-                cur.value = tmp;
-                tokenStack.push(cur);
+                IR.add(Instruction.createSub(tmp, values.rhs(0), values.rhs(2)));
+                values.setHead(tmp);
             }
             case 11 -> {
-                rhs = tokenStack.pop();
-                tokenStack.pop();
-                lhs = tokenStack.pop();
-
                 tmp = IRVariable.temp();
-                IR.add(Instruction.createMul(tmp, lhs.value, rhs.value));
-                cur.value = tmp;
-                tokenStack.push(cur);
-            }
-            case 10,12,14 -> {
-                cur.value = tokenStack.pop().value;
-                tokenStack.push(cur);
-            }
-            case 13 -> {
-                tokenStack.pop();
-                rhs = tokenStack.pop();
-                tokenStack.pop();
-                cur.value = rhs.value;
-                tokenStack.push(cur);
-            }
-            case 15 -> {
-                rhs = tokenStack.pop();
-                cur.value = rhs.value;
-                tokenStack.push(cur);
+                IR.add(Instruction.createMul(tmp, values.rhs(0), values.rhs(2)));
+                values.setHead(tmp);
             }
+            case 10,12,14,15 -> values.setHead(values.rhs(0));
+            case 13 -> values.setHead(values.rhs(1)); // B -> ( E )
             default -> {
-                for(int i = 0; i < production.body().size(); ++i) {
-                    tokenStack.pop();
-                }
-                tokenStack.push(new Symbol(production.head()));
+                // 不会被调用, 见 handlesProduction; 其余产生式头没有 IR 值, 即属性栈的默认值 null
             }
         }
     }
 
+    @Override
+    public boolean handlesProduction(Production production) {
+        // 只有赋值, 返回与表达式相关的产生式 (6 至 15) 才产生指令或传递 IR 值
+        return production.index() >= 6;
+    }
+
+    @Override
+    public boolean acceptsUnitChains() {
+        // 单产生式 E -> A, A -> B 只把 IR 值原样上传, 属性栈中的值保留不变即可
+        return true;
+    }
+
 
     @Override
     public void whenAccept(Status currentStatus) {
@@ -119,6 +115,11 @@ public class IRGenerator implements ActionObserver {
         this.table = table;
     }
 
+    @Override
+    public void setAttributeStack(AttributeStack attributes) {
+        this.values = attributes.newColumn();
+    }
+
     public List<Instruction> getIR() {
         return this.IR;
     }
@@ -0,0 +1,338 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.Production;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 让观察者在各自的线程上与语法分析并行执行的事件流水线
+ * <br>
+ * 驱动程序 (唯一的生产者) 把移入, 规约与接受事件写入预先分配的环形缓冲区, 每个观察者由一个消费者线程按顺序读取并回调.
+ * 事件编码为两个 int: {@code 状态编号 << 2 | 种类}, 以及移入的词法单元下标或规约的产生式编号;
+ * 从词法单元流读取时另以 Token 数组保存移入的词法单元; 规约后途经的单产生式链的编号另存于 {@link #chains}.
+ * <br>
+ * 缓冲区采用单生产者, 多消费者的序号方案: 生产者每写入一批事件后发布 {@link #cursor}, 各消费者处理完后发布自己的序号.
+ * 生产者写入前检查最慢的消费者, 缓冲区满时等待, 即背压. 消费者异常退出时把自己的序号置为最大值, 不再拖住生产者.
+ * <br>
+ * 属性栈不能共享: 生产者总是领先于消费者. 因此每个观察者在注册时拿到自己的属性栈副本, 由其消费者线程按事件维护.
+ * <br>
+ * 分析结束 (接受或出错) 时驱动程序调用 {@link #finish}, 等待所有消费者处理完全部事件, 再把消费者中抛出的异常重新抛出.
+ */
+final class ObserverPipeline {
+    private static final int SHIFT = 1;
+    private static final int REDUCE = 2;
+    private static final int ACCEPT = 3;
+    // 出错时结束消费者, 不通知观察者
+    private static final int END = 0;
+
+    // 每写入这么多个事件才发布一次 cursor, 减少消费者读到的缓存行失效
+    private static final int PUBLISH_BATCH = 64;
+
+    /**
+     * 由消费者线程执行的一个观察者
+     */
+    static final class Consumer implements Runnable {
+        Consumer(ActionObserver observer, AttributeStack attributes) {
+            this.observer = observer;
+            this.attributes = attributes;
+        }
+
+        private final ActionObserver observer;
+        private final AttributeStack attributes;
+        private final AtomicLong sequence = new AtomicLong();
+        private ObserverPipeline pipeline;
+        private boolean[] handles;
+        private boolean needsShift;
+        private boolean keepsAttributes;
+        private boolean acceptsUnitChains;
+        private volatile Throwable failure = null;
+
+        @Override
+        public void run() {
+            try {
+                consume();
+            } catch (Throwable e) {
+                failure = e;
+                // 不再读取缓冲区, 也不再限制生产者
+                sequence.set(Long.MAX_VALUE);
+            }
+        }
+
+        private void consume() {
+            final var pipeline = this.pipeline;
+            final var table = pipeline.table;
+            final var buffer = pipeline.buffer;
+            final var mask = pipeline.mask;
+            var next = 0L;
+            while (true) {
+                final var available = pipeline.waitFor(next);
+                for (; next < available; next++) {
+                    final var slot = (int) (next & mask);
+                    final var event = pipeline.events[slot];
+                    final var payload = pipeline.payloads[slot];
+                    final var status = table.status(event >>> 2);
+                    switch (event & 3) {
+                        case SHIFT -> {
+                            final var token = buffer == null ? pipeline.tokens[slot] : null;
+                            if (keepsAttributes) {
+                                attributes.pushToken(buffer == null ? token.getSymbolId() : buffer.getSymbolId(payload));
+                            }
+                            if (needsShift) {
+                                if (buffer == null) {
+                                    observer.whenShift(status, token);
+                                } else {
+                                    observer.whenShift(status, buffer, payload);
+                                }
+                            }
+                        }
+                        case REDUCE -> {
+                            final var chain = pipeline.chains[slot];
+                            if (keepsAttributes) {
+                                attributes.beginReduce(table.bodyLength(payload));
+                            }
+                            // 接受合并通知的观察者只在关心该规约时收到合并的通知, 其中只含它关心的单产生式
+                            final var merged = chain >= 0 && acceptsUnitChains && handles[payload];
+                            if (handles[payload]) {
+                                final var units = merged
+                                        ? SyntaxAnalyzer.handledUnits(table.unitChain(chain), unit -> handles[unit])
+                                        : List.<Production>of();
+                                if (units.isEmpty()) {
+                                    observer.whenReduce(status, table.production(payload));
+                                } else {
+                                    observer.whenReduce(status, table.production(payload), units);
+                                }
+                            }
+                            if (keepsAttributes) {
+                                attributes.endReduce();
+                            }
+                            // 收到了合并通知的观察者的属性在单产生式规约中原样保留, 不必补发
+                            if (chain >= 0 && !merged) {
+                                for (final var unit : table.unitChain(chain)) {
+                                    if (keepsAttributes) {
+                                        attributes.beginUnitReduce();
+                                    }
+                                    if (handles[unit.index()]) {
+                                        observer.whenReduce(status, unit);
+                                    }
+                                    if (keepsAttributes) {
+                                        attributes.endReduce();
+                                    }
+                                }
+                            }
+                        }
+                        case ACCEPT -> {
+                            observer.whenAccept(status);
+                            sequence.set(next + 1);
+                            return;
+                        }
+                        default -> {
+                            sequence.set(next + 1);
+                            return;
+                        }
+                    }
+                }
+                sequence.lazySet(next);
+            }
+        }
+    }
+
+    /**
+     * @param consumers 各观察者对应的消费者
+     * @param capacity  缓冲区容量, 向上取为 2 的幂
+     */
+    ObserverPipeline(List<Consumer> consumers, int capacity) {
+        final var size = Integer.highestOneBit(Math.max(PUBLISH_BATCH, capacity - 1)) << 1;
+        this.consumers = consumers;
+        this.mask = size - 1;
+        this.events = new int[size];
+        this.payloads = new int[size];
+        this.chains = new int[size];
+    }
+
+    /**
+     * 启动各消费者线程
+     *
+     * @param table  编译后的分析表
+     * @param buffer 词法单元序列; 从词法单元流读取时为 null
+     */
+    void start(CompiledLRTable table, TokenBuffer buffer) {
+        this.table = table;
+        this.buffer = buffer;
+        this.tokens = buffer == null ? new Token[events.length] : null;
+        this.produced = 0;
+        this.cachedMinSequence = 0;
+        this.cursor.set(0);
+        this.threads.clear();
+
+        final var productions = GrammarInfo.getProductionsInOrder();
+        var productionCount = 0;
+        for (final var production : productions) {
+            productionCount = Math.max(productionCount, production.index() + 1);
+        }
+        for (final var consumer : consumers) {
+            consumer.pipeline = this;
+            consumer.sequence.set(0);
+            consumer.failure = null;
+            consumer.needsShift = consumer.observer.needsShift();
+            consumer.keepsAttributes = consumer.attributes.hasColumns();
+            consumer.acceptsUnitChains = consumer.observer.acceptsUnitChains();
+            consumer.attributes.clear();
+            consumer.handles = new boolean[productionCount];
+            for (final var production : productions) {
+                consumer.handles[production.index()] = consumer.observer.handlesProduction(production);
+            }
+
+            final var thread = new Thread(consumer, "parser-observer-" + threads.size());
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    void publishShift(int state, int tokenIndex, Token token) {
+        final var slot = claim();
+        events[slot] = state << 2 | SHIFT;
+        payloads[slot] = tokenIndex;
+        if (tokens != null) {
+            tokens[slot] = token;
+        }
+        commit();
+    }
+
+    /**
+     * @param chain 规约后途经的单产生式链的编号, 没有时为 -1
+     */
+    void publishReduce(int state, int production, int chain) {
+        final var slot = claim();
+        events[slot] = state << 2 | REDUCE;
+        payloads[slot] = production;
+        chains[slot] = chain;
+        commit();
+    }
+
+    void publishAccept(int state) {
+        final var slot = claim();
+        events[slot] = state << 2 | ACCEPT;
+        commit();
+    }
+
+    /**
+     * 分析结束时调用: 未接受时写入结束事件, 然后等待所有消费者处理完全部事件
+     *
+     * @param accepted 是否已写入接受事件
+     * @throws RuntimeException 某个观察者在回调中抛出了异常
+     */
+    void finish(boolean accepted) {
+        if (!accepted) {
+            final var slot = claim();
+            events[slot] = END;
+            commit();
+        }
+        cursor.set(produced);
+
+        var interrupted = false;
+        for (final var thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        threads.clear();
+        tokens = null;
+
+        for (final var consumer : consumers) {
+            final var failure = consumer.failure;
+            if (failure instanceof RuntimeException e) {
+                throw e;
+            } else if (failure instanceof Error e) {
+                throw e;
+            } else if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+        }
+    }
+
+    /**
+     * @return 下一个事件应写入的位置, 缓冲区满时等待最慢的消费者
+     */
+    private int claim() {
+        final var wrapPoint = produced - events.length;
+        if (wrapPoint >= cachedMinSequence) {
+            // 等待前先发布已写入的事件, 否则消费者看不到它们
+            cursor.set(produced);
+            var spins = 0;
+            while (wrapPoint >= (cachedMinSequence = minSequence())) {
+                spins = backOff(spins);
+            }
+        }
+        return (int) (produced & mask);
+    }
+
+    private void commit() {
+        if ((++produced & (PUBLISH_BATCH - 1)) == 0) {
+            cursor.lazySet(produced);
+        }
+    }
+
+    private long minSequence() {
+        var min = Long.MAX_VALUE;
+        for (final var consumer : consumers) {
+            min = Math.min(min, consumer.sequence.get());
+        }
+        return min;
+    }
+
+    /**
+     * 消费者等待生产者发布下一批事件
+     *
+     * @param next 消费者要读取的下一个事件的序号
+     * @return 已发布的事件数, 大于 next
+     */
+    private long waitFor(long next) {
+        var spins = 0;
+        long available;
+        while ((available = cursor.get()) <= next) {
+            spins = backOff(spins);
+        }
+        return available;
+    }
+
+    private static int backOff(int spins) {
+        if (spins < 100) {
+            Thread.onSpinWait();
+        } else {
+            // 核数少于线程数时忙等只会拖慢对方
+            Thread.yield();
+        }
+        return spins + 1;
+    }
+
+    private final List<Consumer> consumers;
+    private final List<Thread> threads = new ArrayList<>();
+    private final int mask;
+    private final int[] events;
+    private final int[] payloads;
+    private final int[] chains;
+    private Token[] tokens = null;
+    private CompiledLRTable table;
+    private TokenBuffer buffer;
+
+    // 已发布给消费者的事件数
+    private final AtomicLong cursor = new AtomicLong();
+    // 以下只由生产者访问: 已写入的事件数, 以及上次读到的最慢消费者的序号
+    private long produced = 0;
+    private long cachedMinSequence = 0;
+}
@@ -0,0 +1,50 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+
+/**
+ * 直接编码的分析器与驱动程序之间的接口
+ * <br>
+ * 分析器自己维护状态栈, 决定每一步的动作; 读取词法单元, 通知观察者, 维护属性栈与符号栈等副作用都由驱动程序通过本接口完成,
+ * 因此观察者收到的回调与按表分析时完全相同.
+ */
+interface ParseEvents {
+    /**
+     * @return 当前词法单元的码点
+     */
+    int code();
+
+    /**
+     * 移入当前词法单元并读取下一个
+     *
+     * @param state 移入前的状态
+     */
+    void shift(int state);
+
+    /**
+     * @param state      规约前的状态
+     * @param production 规约所用产生式的编号
+     */
+    void reduce(int state, int production);
+
+    /**
+     * 规约后在转移之前还要途经单产生式链时代替 {@link #reduce(int, int)} 调用, 见 {@link CompiledLRTable#unitChainAfterReduce}
+     *
+     * @param state      规约前的状态
+     * @param production 规约所用产生式的编号
+     * @param chain      单产生式链的编号
+     */
+    void reduce(int state, int production, int chain);
+
+    /**
+     * @param state 接受时的状态
+     */
+    void accept(int state);
+
+    /**
+     * 报告语法错误
+     *
+     * @param state 出错时的状态
+     */
+    void error(int state);
+}
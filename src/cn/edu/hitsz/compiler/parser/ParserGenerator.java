@@ -0,0 +1,250 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * 直接编码的 LR 分析器的生成器
+ * <br>
+ * 对任意 {@link LRTable} (由 TableLoader 读取或由 TableGenerator 构造), 生成一个 {@link DirectCodedParser} 子类的 Java 源代码:
+ * 外层 switch 按状态分派, 内层 switch 按终结符码点分派, 动作相同的终结符合并为同一分支; 规约后的 goto 为每个非终结符生成一个方法.
+ * 分析表消去了单产生式规约时, 途经单产生式链的非终结符另生成一个按状态查链编号的方法.
+ * 所有目标状态与产生式编号都是常量, JIT 可以直接内联与预测这些分支.
+ * <br>
+ * 生成的源代码可以写入 src 与其余代码一起编译, 也可以用 {@link #compile(LRTable)} 在运行时编译并定义为隐藏类.
+ */
+public final class ParserGenerator {
+    private static final String PACKAGE = ParserGenerator.class.getPackageName();
+
+    /**
+     * @param table     分析表
+     * @param className 生成的类名, 位于本包中
+     * @return 生成的 Java 源代码
+     */
+    public static String generateSource(LRTable table, String className) {
+        final var compiled = table.compile();
+        final var codes = compiled.terminalCodes();
+
+        final var text = new StringBuilder();
+        text.append("package ").append(PACKAGE).append(";\n\n");
+        text.append("/**\n * 由 ParserGenerator 根据 LR 分析表生成, 不要手动修改\n */\n");
+        text.append("final class ").append(className).append(" extends DirectCodedParser {\n");
+        text.append("    @Override\n");
+        text.append("    boolean parse(ParseEvents events) {\n");
+        text.append("        int[] stack = new int[64];\n");
+        text.append("        int top = 0;\n");
+        text.append("        stack[0] = ").append(compiled.initState()).append(";\n");
+        text.append("        while (true) {\n");
+        text.append("            final int state = stack[top];\n");
+        text.append("            final int next;\n");
+        text.append("            switch (state) {\n");
+
+        // 规约后需要 goto 的非终结符 (列号) 及任一以它为头部的产生式; 其中可能途经单产生式链的非终结符
+        final var gotoHeads = new TreeMap<Integer, Integer>();
+        final var chainHeads = chainHeads(compiled);
+        for (int state = 0; state < compiled.stateCount(); state++) {
+            if (compiled.status(state) == null) {
+                continue;
+            }
+
+            // 动作相同的终结符合并为一个分支, 保持首次出现的顺序
+            final var branches = new LinkedHashMap<Integer, List<Integer>>();
+            for (final var code : codes) {
+                final var action = compiled.action(state, code);
+                if (CompiledLRTable.kindOf(action) != CompiledLRTable.ERROR) {
+                    branches.computeIfAbsent(action, key -> new ArrayList<>()).add(code);
+                }
+            }
+
+            text.append("                case ").append(state).append(" -> {\n");
+            text.append("                    switch (events.code()) {\n");
+            for (final var branch : branches.entrySet()) {
+                final var action = branch.getKey();
+                final var payload = CompiledLRTable.payloadOf(action);
+                text.append("                        case ").append(joinCodes(branch.getValue())).append(" -> ");
+                switch (CompiledLRTable.kindOf(action)) {
+                    case CompiledLRTable.SHIFT -> text
+                            .append("{ events.shift(").append(state).append("); next = ").append(payload).append("; }\n");
+                    case CompiledLRTable.REDUCE -> {
+                        final var head = compiled.headOf(payload);
+                        gotoHeads.putIfAbsent(head, payload);
+                        final var chained = chainHeads.containsKey(head);
+                        text.append("{ ");
+                        final var length = compiled.bodyLength(payload);
+                        if (length > 0) {
+                            text.append("top -= ").append(length).append("; ");
+                        }
+                        text.append("events.reduce(").append(state).append(", ").append(payload);
+                        if (chained) {
+                            text.append(", chain").append(head).append("(stack[top])");
+                        }
+                        text.append("); next = goto").append(head).append("(stack[top]); }\n");
+                    }
+                    default -> text
+                            .append("{ events.accept(").append(state).append("); return true; }\n");
+                }
+            }
+            text.append("                        default -> { events.error(").append(state).append("); return false; }\n");
+            text.append("                    }\n");
+            text.append("                }\n");
+        }
+
+        text.append("                default -> throw new IllegalStateException(\"Unknown state \" + state);\n");
+        text.append("            }\n");
+        text.append("            if (++top == stack.length) {\n");
+        text.append("                stack = grow(stack);\n");
+        text.append("            }\n");
+        text.append("            stack[top] = next;\n");
+        text.append("        }\n");
+        text.append("    }\n");
+
+        for (final var entry : gotoHeads.entrySet()) {
+            text.append("\n    private static int goto").append(entry.getKey()).append("(int state) {\n");
+            text.append("        return switch (state) {\n");
+            for (int state = 0; state < compiled.stateCount(); state++) {
+                if (compiled.status(state) == null) {
+                    continue;
+                }
+                final var target = compiled.gotoAfterReduce(state, entry.getValue());
+                if (target >= 0) {
+                    text.append("            case ").append(state).append(" -> ").append(target).append(";\n");
+                }
+            }
+            text.append("            default -> throw new IllegalStateException(\"No goto from state \" + state);\n");
+            text.append("        };\n");
+            text.append("    }\n");
+        }
+
+        for (final var entry : chainHeads.entrySet()) {
+            text.append("\n    private static int chain").append(entry.getKey()).append("(int state) {\n");
+            text.append("        return switch (state) {\n");
+            for (int state = 0; state < compiled.stateCount(); state++) {
+                if (compiled.status(state) == null) {
+                    continue;
+                }
+                final var chain = compiled.unitChainAfterReduce(state, entry.getValue());
+                if (chain >= 0) {
+                    text.append("            case ").append(state).append(" -> ").append(chain).append(";\n");
+                }
+            }
+            text.append("            default -> -1;\n");
+            text.append("        };\n");
+            text.append("    }\n");
+        }
+        text.append("}\n");
+        return text.toString();
+    }
+
+    /**
+     * @return 规约后可能途经单产生式链的非终结符 (列号) 及任一以它为头部的产生式
+     */
+    private static TreeMap<Integer, Integer> chainHeads(CompiledLRTable compiled) {
+        final var result = new TreeMap<Integer, Integer>();
+        if (!compiled.hasUnitChains()) {
+            return result;
+        }
+        final var checked = new HashSet<Integer>();
+        for (int production = 0; production < compiled.productionCount(); production++) {
+            if (compiled.production(production) == null || !checked.add(compiled.headOf(production))) {
+                continue;
+            }
+            for (int state = 0; state < compiled.stateCount(); state++) {
+                if (compiled.status(state) != null && compiled.unitChainAfterReduce(state, production) >= 0) {
+                    result.put(compiled.headOf(production), production);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 生成分析器的源代码, 在运行时编译并定义为隐藏类
+     * <br>
+     * 需要运行在带有编译器的 JDK 上, 且本包的类可以从 java.class.path 找到.
+     *
+     * @param table 分析表
+     * @return 生成的分析器
+     */
+    public static DirectCodedParser compile(LRTable table) {
+        final var className = "GeneratedParser";
+        final var source = generateSource(table, className);
+        final var compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new RuntimeException("No Java compiler available for generating the parser");
+        }
+
+        final var classes = new TreeMap<String, ByteArrayOutputStream>();
+        final var fileManager = new ForwardingJavaFileManager<JavaFileManager>(
+                compiler.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind,
+                                                       FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        final var bytes = new ByteArrayOutputStream();
+                        classes.put(name, bytes);
+                        return bytes;
+                    }
+                };
+            }
+        };
+        final var sourceFile = new SimpleJavaFileObject(
+                URI.create("string:///" + PACKAGE.replace('.', '/') + "/" + className + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        final var errors = new StringWriter();
+        final var options = List.of("-proc:none", "-classpath", System.getProperty("java.class.path"));
+        final var success = compiler.getTask(errors, fileManager, null, options, null, List.of(sourceFile)).call();
+        final var bytes = classes.get(PACKAGE + "." + className);
+        if (!success || bytes == null) {
+            throw new RuntimeException("Failed to compile generated parser:\n" + errors);
+        }
+
+        try {
+            final var lookup = MethodHandles.lookup().defineHiddenClass(bytes.toByteArray(), true);
+            return (DirectCodedParser) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                    .invoke();
+        } catch (Throwable e) {
+            throw new RuntimeException("Failed to define generated parser", e);
+        }
+    }
+
+    private static String joinCodes(List<Integer> codes) {
+        final var text = new StringBuilder();
+        for (final var code : codes) {
+            if (!text.isEmpty()) {
+                text.append(", ");
+            }
+            text.append(code);
+        }
+        return text.toString();
+    }
+
+    private ParserGenerator() {
+    }
+}
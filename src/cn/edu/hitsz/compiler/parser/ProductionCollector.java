@@ -1,6 +1,7 @@
 package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
@@ -43,6 +44,17 @@ public class ProductionCollector implements ActionObserver {
         // do nothing
     }
 
+    @Override
+    public void whenShift(Status currentStatus, TokenBuffer tokens, int index) {
+        // do nothing, 也不需要构造 Token
+    }
+
+    @Override
+    public boolean needsShift() {
+        // 只关心规约, 驱动程序不必在移入时通知
+        return false;
+    }
+
     @Override
     public void whenAccept(Status currentStatus) {
         // 当接受时, 记录下对起始产生式的规约
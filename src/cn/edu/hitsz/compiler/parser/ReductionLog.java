@@ -0,0 +1,137 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 二进制规约日志的格式与解码器
+ * <br>
+ * 规约日志按规约顺序记录产生式编号, 每个编号以 varint (每字节低 7 位为数据, 最高位表示后面还有字节) 写出,
+ * 本文法的产生式编号都只占一个字节. 文件开头为 4 字节的魔数 "RLOG", 1 字节的版本号, 产生式编号的上界 (varint),
+ * 以及按编号排列的各产生式的文本, 每条为 UTF-8 字节数 (varint) 与字节本身, 不存在的编号字节数为 0.
+ * <br>
+ * 产生式的文本取自写出时所用的分析表而不是 {@link cn.edu.hitsz.compiler.parser.table.GrammarInfo},
+ * 因为分析表可能使用改写过的产生式 (见 {@link cn.edu.hitsz.compiler.parser.table.TableGenerator#setLeftRecursiveLists}).
+ * 解码只依赖日志本身.
+ * <br>
+ * 日志由 {@link ReductionLogWriter} 在语法分析的同时写出, 需要文本形式时用 {@link #decode} 生成与
+ * {@link ProductionCollector#dumpToFile} 逐字节相同的 parser_list.txt.
+ */
+public final class ReductionLog {
+    static final byte[] MAGIC = {'R', 'L', 'O', 'G'};
+    static final byte VERSION = 2;
+
+    /**
+     * 将二进制规约日志解码为文本形式, 每行一条产生式
+     *
+     * @param logPath  规约日志路径
+     * @param textPath 输出的文本文件路径
+     */
+    public static void decode(String logPath, String textPath) {
+        try (final var channel = FileChannel.open(Paths.get(logPath), StandardOpenOption.READ);
+             final var out = new BufferedOutputStream(Files.newOutputStream(Paths.get(textPath)), 1 << 16)) {
+            final var log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // 每条产生式的文本只构造一次
+            final var lines = readHeader(log, logPath);
+            while (log.hasRemaining()) {
+                final var index = readVarint(log, logPath);
+                if (index >= lines.length || lines[index] == null) {
+                    throw new RuntimeException("Unknown production %d in reduction log %s".formatted(index, logPath));
+                }
+                out.write(lines[index]);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + logPath, e);
+        }
+    }
+
+    /**
+     * @param table 写出日志时所用的分析表
+     * @return 日志头部: 魔数, 版本号与分析表中各产生式的文本
+     */
+    static byte[] header(CompiledLRTable table) {
+        final var header = new ByteArrayOutputStream();
+        header.writeBytes(MAGIC);
+        header.write(VERSION);
+        final var varint = ByteBuffer.allocate(5);
+        final var count = table.productionCount();
+        writeVarint(varint, count);
+        header.write(varint.array(), 0, varint.position());
+        for (int index = 0; index < count; index++) {
+            final var production = table.production(index);
+            final var text = production == null ? new byte[0] : production.toString().getBytes(StandardCharsets.UTF_8);
+            varint.clear();
+            writeVarint(varint, text.length);
+            header.write(varint.array(), 0, varint.position());
+            header.writeBytes(text);
+        }
+        return header.toByteArray();
+    }
+
+    /**
+     * 以 varint 形式写出非负整数, buffer 至少应剩余 5 个字节
+     */
+    static void writeVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int readVarint(ByteBuffer buffer, String path) {
+        var value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new RuntimeException("Truncated reduction log " + path);
+            }
+            final var b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new RuntimeException("Malformed varint in reduction log " + path);
+    }
+
+    /**
+     * @return 以产生式编号为下标的各产生式的文本 (含换行符), 不存在的编号为 null
+     */
+    private static byte[][] readHeader(ByteBuffer log, String path) {
+        for (final var b : MAGIC) {
+            if (!log.hasRemaining() || log.get() != b) {
+                throw new RuntimeException("Not a reduction log: " + path);
+            }
+        }
+        if (!log.hasRemaining() || log.get() != VERSION) {
+            throw new RuntimeException("Unsupported reduction log version: " + path);
+        }
+        final var lineSeparator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+        final var lines = new byte[readVarint(log, path)][];
+        for (int index = 0; index < lines.length; index++) {
+            final var length = readVarint(log, path);
+            if (length > log.remaining()) {
+                throw new RuntimeException("Truncated reduction log " + path);
+            }
+            if (length > 0) {
+                final var line = new byte[length + lineSeparator.length];
+                log.get(line, 0, length);
+                System.arraycopy(lineSeparator, 0, line, length, lineSeparator.length);
+                lines[index] = line;
+            }
+        }
+        return lines;
+    }
+
+    private ReductionLog() {
+    }
+}
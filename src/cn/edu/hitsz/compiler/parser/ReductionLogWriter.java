@@ -0,0 +1,116 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 在语法分析的同时写出二进制规约日志的观察者, 格式见 {@link ReductionLog}
+ * <br>
+ * 与 {@link ProductionCollector} 记录的内容相同, 但不在内存中保存产生式列表: 每次规约只向直接缓冲区写入一两个字节,
+ * 缓冲区满时写入文件. 接受时写入起始产生式并关闭文件; 分析出错时应由调用者调用 {@link #close()}.
+ */
+public class ReductionLogWriter implements ActionObserver, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * @param path  规约日志的路径, 已存在时覆盖
+     * @param table 语法分析所用的分析表, 其中的产生式文本写入日志头部
+     */
+    public ReductionLogWriter(String path, LRTable table) {
+        this.path = path;
+        try {
+            this.channel = FileChannel.open(Paths.get(path),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            final var header = ByteBuffer.wrap(ReductionLog.header(table.compile()));
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    private final String path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private boolean closed = false;
+
+    @Override
+    public void whenReduce(Status currentStatus, Production production) {
+        write(production.index());
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, Token currentToken) {
+        // do nothing
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, TokenBuffer tokens, int index) {
+        // do nothing
+    }
+
+    @Override
+    public boolean needsShift() {
+        return false;
+    }
+
+    @Override
+    public void whenAccept(Status currentStatus) {
+        // 与 ProductionCollector 相同, 接受时记录对起始产生式的规约
+        write(GrammarInfo.getBeginProduction().index());
+        close();
+    }
+
+    @Override
+    public void setSymbolTable(SymbolTable table) {
+        // do nothing
+    }
+
+    /**
+     * 写出缓冲区中剩余的内容并关闭文件, 重复调用无效
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (channel) {
+            flush();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    private void write(int index) {
+        if (buffer.remaining() < 5) {
+            flush();
+        }
+        ReductionLog.writeVarint(buffer, index);
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+        buffer.clear();
+    }
+}
@@ -2,19 +2,18 @@ package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.lexer.Token;
-import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SourceCodeType;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
-import java.util.Objects;
-import java.util.Stack;
 
 
 public class SemanticAnalyzer implements ActionObserver {
     public SymbolTable table;
-    private final Stack<Symbol> tokenStack = new Stack<>();
+    // 每个符号的类型, 存放在驱动程序的属性栈中
+    private AttributeStack attributes;
+    private AttributeStack.Column<SourceCodeType> types;
 
     @Override
     public void whenAccept(Status currentStatus) {
@@ -22,45 +21,49 @@ public class SemanticAnalyzer implements ActionObserver {
 
     @Override
     public void whenReduce(Status currentStatus, Production production) {
-        Symbol token1, token2;
-        Symbol non_terminal;
         switch(production.index()) {
             case 4: // S -> D id;
-                token1 = tokenStack.pop();
-                token2 = tokenStack.pop();
-                this.table.get(token1.token.getText()).setType(token2.type);
-                non_terminal = new Symbol(production.head());
-                non_terminal.type = null;
-                tokenStack.push(non_terminal);
+                this.table.get(attributes.rhsSymbolId(1)).setType(types.rhs(0));
                 break;
-            case 5:
-                token1 = tokenStack.pop();
-                non_terminal = new Symbol(production.head());
-                non_terminal.type = token1.type;
-                tokenStack.push(non_terminal);
+            case 5: // D -> int;
+                types.setHead(SourceCodeType.Int);
                 break;
             default:
-                for(int i = 0; i < production.body().size(); ++i) {
-                    tokenStack.pop();
-                }
-                tokenStack.push(new Symbol(production.head()));
+                // 不会被调用, 见 handlesProduction; 其余产生式头的类型均为 null, 即属性栈的默认值
+                break;
         }
     }
 
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
-        Symbol cur = new Symbol(currentToken);
-        if(Objects.equals(currentToken.getKindId(), "int")) {
-            cur.type = SourceCodeType.Int;
-        } else {
-            cur.type = null;
-        }
-        tokenStack.push(cur);
+        // 不会被调用, 见 needsShift
+    }
+
+    @Override
+    public boolean needsShift() {
+        // 唯一带类型的终结符是 int, 它的类型在规约 D -> int 时即可确定
+        return false;
+    }
+
+    @Override
+    public boolean handlesProduction(Production production) {
+        return production.index() == 4 || production.index() == 5;
+    }
+
+    @Override
+    public boolean acceptsUnitChains() {
+        // 不关心任何单产生式
+        return true;
     }
 
     @Override
     public void setSymbolTable(SymbolTable table) {
         this.table = table;
     }
-}
 
+    @Override
+    public void setAttributeStack(AttributeStack attributes) {
+        this.attributes = attributes;
+        this.types = attributes.newColumn();
+    }
+}
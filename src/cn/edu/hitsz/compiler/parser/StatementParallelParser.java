@@ -0,0 +1,231 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.NonTerminal;
+import cn.edu.hitsz.compiler.parser.table.Production;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * 顶层语句列表的并行分析
+ * <br>
+ * 程序的文法形如 P -> S_list, S_list -> S Semicolon S_list | S Semicolon: 语句之间以分号分隔, 且分号只出现在语句之间.
+ * 由于 S_list 是右递归的, 串行分析时除第一条外的每条语句都从移入分号之后的同一个状态开始, 且语句内部的规约不会弹出该状态以下的栈.
+ * 因此可以在分号之后把词法单元切成若干块, 各块从相应的状态出发在 ForkJoinPool 上独立分析, 只记下移入, 规约与出错事件而不调用观察者.
+ * 驱动程序按块的顺序重放这些事件, 以与串行分析完全相同的顺序调用观察者, 并把块末的状态栈接在自己的栈上.
+ * 最后一个块之后的部分 (包括 S_list 的各次规约与接受) 仍由驱动程序串行分析.
+ * <br>
+ * 一块的分析结果只取决于起始状态与块中的词法单元. 重放时若驱动程序的栈顶不是该块的起始状态, 或该块的分析要弹出起始状态
+ * (文法不是上述形式时可能发生), 驱动程序就放弃其余各块, 从该块起改为串行分析, 结果仍与串行分析相同.
+ */
+final class StatementParallelParser {
+    // 少于该数目的词法单元不值得并行分析
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int MIN_CHUNK_SIZE = 1 << 14;
+    // 每分析这么多个词法单元检查一次取消标志
+    private static final int CANCEL_CHECK_INTERVAL = 1 << 10;
+
+    /**
+     * 一块的分析结果
+     * <br>
+     * 事件依次编码在 events 中: 移入为 (状态 << 2 | SHIFT); 规约为 (状态 << 2 | REDUCE), 产生式编号, 单产生式链编号三个数;
+     * 出错为 (状态 << 2 | ERROR), 之后不再有事件. 不记录事件时只记下出错的位置. 状态栈的 stack[0] 为起始状态.
+     */
+    static final class Chunk {
+        final int start;
+        final int end;
+        final boolean recordsEvents;
+        int[] events;
+        int eventCount = 0;
+        int[] stack = new int[64];
+        int stackTop = 0;
+        // 分析要弹出起始状态, 遇到接受或被取消时为 false, 驱动程序须从 start 起串行分析
+        boolean complete = true;
+        // 出错的词法单元的位置, 没有出错时为 -1
+        int errorPosition = -1;
+
+        Chunk(int start, int end, int baseState, boolean recordsEvents) {
+            this.start = start;
+            this.end = end;
+            this.recordsEvents = recordsEvents;
+            this.events = new int[recordsEvents ? 256 : 0];
+            this.stack[0] = baseState;
+        }
+
+        int baseState() {
+            return stack[0];
+        }
+
+        private void log(int value) {
+            if (eventCount == events.length) {
+                events = Arrays.copyOf(events, events.length * 2);
+            }
+            events[eventCount++] = value;
+        }
+
+        private void push(int state) {
+            if (++stackTop == stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[stackTop] = state;
+        }
+    }
+
+    /**
+     * 切分词法单元并在 ForkJoinPool 上开始分析各块
+     *
+     * @param table         编译后的分析表
+     * @param tokens        词法单元, 最后一个为 EOF
+     * @param recordsEvents 是否记录事件; 没有观察者时驱动程序不需要重放事件, 只需要各块末的状态栈与出错的位置
+     * @param cancelled     取消标志. 驱动程序不再需要其余各块 (出错或改为串行分析) 时将其置为 true,
+     *                      正在执行的块会在下一次检查时停止. {@link ForkJoinTask#cancel} 只能取消尚未开始的块
+     * @return 各块的分析任务, 按块的顺序排列; 输入太短, 只有一个线程或文法不是语句列表时为空表
+     */
+    static List<ForkJoinTask<Chunk>> start(CompiledLRTable table, TokenBuffer tokens, boolean recordsEvents,
+                                           AtomicBoolean cancelled) {
+        final var parallelism = ForkJoinPool.getCommonPoolParallelism();
+        if (tokens.size() < PARALLEL_THRESHOLD || parallelism <= 1) {
+            return List.of();
+        }
+
+        // P -> S_list 与 S_list -> S Semicolon S_list. 产生式取自分析表, 列表被改写为左递归 (见 TableGenerator#setLeftRecursiveLists) 时不并行
+        final var begin = GrammarInfo.getBeginProduction();
+        if (begin.body().size() != 1 || !(begin.body().get(0) instanceof NonTerminal list)) {
+            return List.of();
+        }
+        final var productions = IntStream.range(0, table.productionCount())
+                .mapToObj(table::production).filter(Objects::nonNull).toList();
+        Production element = null;
+        TokenKind separator = null;
+        for (final var production : productions) {
+            final var body = production.body();
+            if (production.head().equals(list) && body.size() == 3 && body.get(2).equals(list)
+                    && body.get(0) instanceof NonTerminal statement && body.get(1) instanceof TokenKind terminal) {
+                // 任取一条以语句为头部的产生式, 用于查 goto(状态, S)
+                element = productions.stream()
+                        .filter(candidate -> candidate.head().equals(statement)).findFirst().orElse(null);
+                separator = terminal;
+                break;
+            }
+        }
+        if (element == null) {
+            return List.of();
+        }
+
+        // 第一条语句之后的各条语句的起始状态: 规约出 S 并移入分号之后的状态
+        // 压缩形式的分析表对无转移的格子也返回默认转移, 因此先用 hasGoto 判断
+        if (!table.hasGoto(table.initState(), element.index())) {
+            return List.of();
+        }
+        final var afterStatement = table.gotoAfterReduce(table.initState(), element.index());
+        final var shift = table.action(afterStatement, separator.getCode());
+        if (CompiledLRTable.kindOf(shift) != CompiledLRTable.SHIFT) {
+            return List.of();
+        }
+        final var statementState = CompiledLRTable.payloadOf(shift);
+
+        final var bounds = splitAfterSeparators(tokens, separator.getCode(),
+                Math.max(MIN_CHUNK_SIZE, tokens.size() / (parallelism * 4)));
+        final var tasks = new ArrayList<ForkJoinTask<Chunk>>(bounds.length - 1);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            final var chunk = new Chunk(bounds[i], bounds[i + 1], i == 0 ? table.initState() : statementState,
+                    recordsEvents);
+            tasks.add(ForkJoinPool.commonPool().submit(() -> parse(table, tokens, chunk, cancelled)));
+        }
+        return tasks;
+    }
+
+    /**
+     * @return 各块的边界, 第 i 块为 [bounds[i], bounds[i + 1]); 每块 (除最后的边界外) 都在分号之后结束, 最后一个分号之后的部分不在任何块中
+     */
+    private static int[] splitAfterSeparators(TokenBuffer tokens, int separator, int chunkSize) {
+        final var size = tokens.size();
+        var last = size;
+        while (last > 0 && tokens.getCode(last - 1) != separator) {
+            last--;
+        }
+
+        final var bounds = new ArrayList<Integer>();
+        bounds.add(0);
+        var from = 0;
+        while (last - from > chunkSize) {
+            var cut = from + chunkSize;
+            while (tokens.getCode(cut - 1) != separator) {
+                cut++;
+            }
+            bounds.add(cut);
+            from = cut;
+        }
+        if (from < last) {
+            bounds.add(last);
+        }
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * 与驱动程序的分析循环相同, 但只记下事件; 读到块末或被取消时停止
+     */
+    private static Chunk parse(CompiledLRTable table, TokenBuffer tokens, Chunk chunk, AtomicBoolean cancelled) {
+        final var recordsEvents = chunk.recordsEvents;
+        var position = chunk.start;
+        while (position < chunk.end) {
+            if ((position & (CANCEL_CHECK_INTERVAL - 1)) == 0 && cancelled.get()) {
+                chunk.complete = false;
+                return chunk;
+            }
+            final var state = chunk.stack[chunk.stackTop];
+            final var action = table.action(state, tokens.getCode(position));
+
+            switch (CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    if (recordsEvents) {
+                        chunk.log(state << 2 | CompiledLRTable.SHIFT);
+                    }
+                    chunk.push(CompiledLRTable.payloadOf(action));
+                    position++;
+                }
+                case CompiledLRTable.REDUCE -> {
+                    final var production = CompiledLRTable.payloadOf(action);
+                    final var length = table.bodyLength(production);
+                    if (length > chunk.stackTop) {
+                        chunk.complete = false;
+                        return chunk;
+                    }
+                    chunk.stackTop -= length;
+                    final var entry = table.gotoEntry(chunk.stack[chunk.stackTop], production);
+                    if (recordsEvents) {
+                        chunk.log(state << 2 | CompiledLRTable.REDUCE);
+                        chunk.log(production);
+                        chunk.log(table.chainOf(entry));
+                    }
+                    chunk.push(table.targetOf(entry));
+                }
+                case CompiledLRTable.ERROR -> {
+                    if (recordsEvents) {
+                        chunk.log(state << 2 | CompiledLRTable.ERROR);
+                    }
+                    chunk.errorPosition = position;
+                    return chunk;
+                }
+                default -> {
+                    chunk.complete = false;
+                    return chunk;
+                }
+            }
+        }
+        return chunk;
+    }
+
+    private StatementParallelParser() {
+    }
+}
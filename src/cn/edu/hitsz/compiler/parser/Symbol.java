@@ -1,31 +1,35 @@
 package cn.edu.hitsz.compiler.parser;
 
-import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.table.NonTerminal;
-import cn.edu.hitsz.compiler.symtab.SourceCodeType;
 
 public class Symbol{
-    Token token;
+    TokenKind kind;
+    String text;
+    int symbolId;
     NonTerminal nonTerminal;
-    SourceCodeType type = null;
-    IRValue value = null;
 
-    private Symbol(Token token, NonTerminal nonTerminal){
-        this.token = token;
+    private Symbol(TokenKind kind, String text, int symbolId, NonTerminal nonTerminal){
+        this.kind = kind;
+        this.text = text;
+        this.symbolId = symbolId;
         this.nonTerminal = nonTerminal;
     }
 
     public Symbol(Token token){
-        this(token, null);
+        this(token.getKind(), token.getText(), token.getSymbolId(), null);
+    }
+    public Symbol(TokenKind kind, String text, int symbolId){
+        this(kind, text, symbolId, null);
     }
     public Symbol(NonTerminal nonTerminal){
-        this(null, nonTerminal);
+        this(null, null, Token.NO_SYMBOL, nonTerminal);
     }
     public boolean isToken(){
-        return this.token != null;
+        return this.kind != null;
     }
     public boolean isNonterminal(){
         return this.nonTerminal != null;
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,22 @@
 package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.lexer.Token;
-import cn.edu.hitsz.compiler.parser.table.Action;
+import cn.edu.hitsz.compiler.lexer.TokenBuffer;
+import cn.edu.hitsz.compiler.parser.table.CompiledLRTable;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
 import cn.edu.hitsz.compiler.parser.table.LRTable;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.table.TableProfile;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.Diagnostics;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Stack;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntPredicate;
 
 //DONE: 实验二: 实现 LR 语法分析驱动程序
 
@@ -22,16 +30,126 @@ import java.util.Stack;
  */
 public class SyntaxAnalyzer {
     private final SymbolTable symbolTable;
+    private final Diagnostics diagnostics;
+    // 自己创建的收集器在分析结束时输出, 外部传入的则由调用者在编译结束时统一输出
+    private final boolean ownsDiagnostics;
     private final List<ActionObserver> observers = new ArrayList<>();
+    // 与 observers 内容相同, 通知观察者时遍历数组, 不必每次构造迭代器
+    private ActionObserver[] observerArray = new ActionObserver[0];
+    // 需要移入通知的观察者, 以及以产生式编号为下标的关心该产生式的观察者; 注册新观察者后置空, 用到时重新计算
+    private ActionObserver[] shiftObservers = null;
+    private ActionObserver[][] reduceObservers = null;
 
-    private final List<Token> tokens = new ArrayList<>();
+    private Iterator<Token> tokens;
+    private TokenBuffer tokenBuffer;
     private LRTable lrTable;
-    private final Stack<Symbol> symbolStack = new Stack<>();
-    private final Stack<Status> statusStack = new Stack<>();
+
+    // 状态栈只存状态编号, stateTop 为栈顶下标
+    private int[] stateStack = new int[64];
+    private int stateTop = -1;
+    // 符号栈只在有观察者通过 needsSymbolStack 要求时才维护
+    private final List<Symbol> symbolStack = new ArrayList<>();
+    private boolean keepsSymbolStack = false;
+    // 各观察者共享的属性栈, 只在有观察者申请了列时才维护
+    private final AttributeStack attributes = new AttributeStack();
+    private boolean keepsAttributes = false;
+
+    // 流水线模式下在各自线程上执行的观察者, 见 setPipelined
+    private boolean pipelined = false;
+    private final List<ObserverPipeline.Consumer> consumers = new ArrayList<>();
+    private ObserverPipeline pipeline = null;
+    private static final int PIPELINE_CAPACITY = 1 << 14;
+
+    // 是否使用压缩形式的分析表, 见 setCompressedTable
+    private boolean compressedTable = false;
+    private boolean parallel = false;
+    // 按表分析时记录访问计数, 为 null 时不记录
+    private TableProfile profile = null;
+
+    // 不为 null 时代替按表分析, 见 loadDirectCodedParser
+    private DirectCodedParser directCodedParser = null;
+    private final Events events = new Events();
+
+    // 以下只在 run 期间有效: 当前词法单元 (位置或 Token), 分析表, 以及由注册的观察者决定的各项开关
+    private int position = 0;
+    private Token current = null;
+    private CompiledLRTable activeTable = null;
+    private ObserverPipeline activePipeline = null;
+    private boolean keepsSymbols = false;
+    private boolean notifiesShift = false;
+    // 补发单产生式规约时是否需要改动属性栈
+    private boolean replaysUnitAttributes = false;
 
 
     public SyntaxAnalyzer(SymbolTable symbolTable) {
+        this(symbolTable, new Diagnostics(), true);
+    }
+
+    /**
+     * @param symbolTable 符号表
+     * @param diagnostics 错误信息的收集器, 由调用者负责输出
+     */
+    public SyntaxAnalyzer(SymbolTable symbolTable, Diagnostics diagnostics) {
+        this(symbolTable, diagnostics, false);
+    }
+
+    private SyntaxAnalyzer(SymbolTable symbolTable, Diagnostics diagnostics, boolean ownsDiagnostics) {
         this.symbolTable = symbolTable;
+        this.diagnostics = diagnostics;
+        this.ownsDiagnostics = ownsDiagnostics;
+    }
+
+    /**
+     * 设置是否以流水线方式执行观察者, 须在注册观察者之前调用
+     * <br>
+     * 流水线模式下, 驱动程序只把移入, 规约与接受事件写入环形缓冲区, 每个观察者在自己的线程上按顺序处理这些事件,
+     * 与语法分析并行执行; {@link #run()} 在所有观察者处理完全部事件后才返回. 每个观察者拿到自己的属性栈,
+     * 观察者之间不应共享可变状态. 需要符号栈的观察者仍在分析线程上同步执行.
+     * <br>
+     * 按需分析的词法单元流 (如 {@link cn.edu.hitsz.compiler.lexer.LexicalAnalyzer#getTokenStream()}) 在拉取时才向符号表驻留标识符,
+     * 而符号表不能在写入的同时被观察者线程读取. 因此流水线模式下, {@link #run()} 会在启动观察者线程之前先把这种输入全部读出.
+     *
+     * @param pipelined 是否启用流水线
+     */
+    public void setPipelined(boolean pipelined) {
+        if (!observers.isEmpty() || !consumers.isEmpty()) {
+            throw new RuntimeException("Pipelined mode must be chosen before registering observers");
+        }
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * 设置是否使用压缩形式的分析表 (见 {@link LRTable#compileCompressed()})
+     * <br>
+     * 压缩后的分析表更小, 但对只有默认规约的状态在出错时会先做完这些规约再报告错误, 观察者可能多收到几次规约通知.
+     *
+     * @param compressed 是否压缩
+     */
+    public void setCompressedTable(boolean compressed) {
+        this.compressedTable = compressed;
+    }
+
+    /**
+     * 设置是否并行分析顶层的语句列表 (见 {@link StatementParallelParser})
+     * <br>
+     * 只对以 {@link TokenBuffer} 加载的较长输入, 按表分析且不记录访问计数时生效. 观察者仍在当前线程上按串行分析的顺序收到全部回调,
+     * 分析结果与串行分析完全相同.
+     *
+     * @param parallel 是否并行
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * 设置记录访问计数的配置, 按表分析时每一步都记下所在的状态与当前终结符, 传入 null 时不记录
+     * <br>
+     * 配置须为 {@link #loadLRTable} 所加载的分析表创建 (见 {@link TableProfile#create}); 直接编码的分析器不记录.
+     *
+     * @param profile 访问计数
+     */
+    public void setProfile(TableProfile profile) {
+        this.profile = profile;
     }
 
     /**
@@ -40,8 +158,31 @@ public class SyntaxAnalyzer {
      * @param observer 观察者
      */
     public void registerObserver(ActionObserver observer) {
+        if (pipelined && !observer.needsSymbolStack()) {
+            observer.setSymbolTable(symbolTable);
+            // 消费者落后于分析过程, 不能读取驱动程序的属性栈, 由消费者线程维护它自己的副本
+            final var replica = new AttributeStack();
+            observer.setAttributeStack(replica);
+            consumers.add(new ObserverPipeline.Consumer(observer, replica));
+            pipeline = null;
+            return;
+        }
+
         observers.add(observer);
+        observerArray = observers.toArray(new ActionObserver[0]);
+        shiftObservers = null;
+        reduceObservers = null;
         observer.setSymbolTable(symbolTable);
+        if (observer.needsSymbolStack()) {
+            keepsSymbolStack = true;
+            observer.setSymbolStack(Collections.unmodifiableList(symbolStack));
+        }
+        final var firstColumn = attributes.columnCount();
+        observer.setAttributeStack(attributes);
+        if (observer.acceptsUnitChains()) {
+            attributes.passUnitsThrough(firstColumn);
+        }
+        keepsAttributes = attributes.hasColumns();
     }
 
     /**
@@ -51,11 +192,24 @@ public class SyntaxAnalyzer {
      * @param currentToken  当前词法单元
      */
     public void callWhenInShift(Status currentStatus, Token currentToken) {
-        for (final var listener : observers) {
+        for (final var listener : shiftObservers()) {
             listener.whenShift(currentStatus, currentToken);
         }
     }
 
+    /**
+     * 在从 TokenBuffer 中读取词法单元并执行 shift 动作时通知各个观察者
+     *
+     * @param currentStatus 当前状态
+     * @param tokens        词法单元序列
+     * @param index         当前词法单元的下标
+     */
+    private void callWhenInShift(Status currentStatus, TokenBuffer tokens, int index) {
+        for (final var listener : shiftObservers()) {
+            listener.whenShift(currentStatus, tokens, index);
+        }
+    }
+
     /**
      * 在执行 reduce 动作时通知各个观察者
      *
@@ -63,29 +217,105 @@ public class SyntaxAnalyzer {
      * @param production    待规约的产生式
      */
     public void callWhenInReduce(Status currentStatus, Production production) {
-        for (final var listener : observers) {
+        for (final var listener : reduceObservers()[production.index()]) {
             listener.whenReduce(currentStatus, production);
         }
     }
 
+    /**
+     * 在执行 reduce 动作且规约后途经单产生式链时通知各个观察者: 接受合并通知的观察者收到一次合并的通知,
+     * 其中只含它关心的单产生式; 其余观察者先收到该规约的通知, 再由 {@link #onUnitChain} 为各单产生式补发
+     *
+     * @param currentStatus 当前状态
+     * @param production    待规约的产生式
+     * @param units         途经的单产生式
+     */
+    private void callWhenInReduce(Status currentStatus, Production production, List<Production> units) {
+        for (final var listener : reduceObservers()[production.index()]) {
+            final var handled = listener.acceptsUnitChains()
+                    ? handledUnits(units, unit -> handles(listener, unit))
+                    : List.<Production>of();
+            if (handled.isEmpty()) {
+                listener.whenReduce(currentStatus, production);
+            } else {
+                listener.whenReduce(currentStatus, production, handled);
+            }
+        }
+    }
+
+    /**
+     * @param units   途经的单产生式
+     * @param handles 观察者是否关心某条产生式 (以编号表示)
+     * @return units 中观察者关心的单产生式; 全都关心时即为 units 本身
+     */
+    static List<Production> handledUnits(List<Production> units, IntPredicate handles) {
+        for (int i = 0; i < units.size(); i++) {
+            if (!handles.test(units.get(i).index())) {
+                return units.stream().filter(unit -> handles.test(unit.index())).toList();
+            }
+        }
+        return units;
+    }
+
     /**
      * 在执行 accept 动作时通知各个观察者
      *
      * @param currentStatus 当前状态
      */
     public void callWhenInAccept(Status currentStatus) {
-        for (final var listener : observers) {
+        for (final var listener : observerArray) {
             listener.whenAccept(currentStatus);
         }
     }
 
+    private ActionObserver[] shiftObservers() {
+        if (shiftObservers == null) {
+            shiftObservers = observers.stream().filter(ActionObserver::needsShift).toArray(ActionObserver[]::new);
+        }
+        return shiftObservers;
+    }
+
+    private ActionObserver[][] reduceObservers() {
+        if (reduceObservers == null) {
+            final var productions = GrammarInfo.getProductionsInOrder();
+            var productionCount = 0;
+            for (final var production : productions) {
+                productionCount = Math.max(productionCount, production.index() + 1);
+            }
+            reduceObservers = new ActionObserver[productionCount][];
+            Arrays.fill(reduceObservers, new ActionObserver[0]);
+            for (final var production : productions) {
+                reduceObservers[production.index()] = observers.stream()
+                        .filter(observer -> observer.handlesProduction(production))
+                        .toArray(ActionObserver[]::new);
+            }
+        }
+        return reduceObservers;
+    }
+
+    private boolean handles(ActionObserver observer, int production) {
+        for (final var listener : reduceObservers()[production]) {
+            if (listener == observer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public void loadTokens(Iterable<Token> tokens) {
         // DONE: 加载词法单元
         // 你可以自行选择要如何存储词法单元, 譬如使用迭代器, 或是栈, 或是干脆使用一个 list 全存起来
         // 需要注意的是, 在实现驱动程序的过程中, 你会需要面对只读取一个 token 而不能消耗它的情况,
         // 在自行设计的时候请加以考虑此种情况
-        for (var token : tokens) {
-            this.tokens.add(token);
+        // 这里只保存迭代器, 在 run 中边分析边拉取, 当前 token 由驱动程序自己持有以实现 "只看不消耗",
+        // 因此传入按需分析的词法单元流时整个 token 序列不会被物化
+        // 若传入的是 TokenBuffer, 则直接按下标读取, 不再为每个位置构造 Token
+        if (tokens instanceof TokenBuffer buffer) {
+            this.tokenBuffer = buffer;
+            this.tokens = null;
+        } else {
+            this.tokenBuffer = null;
+            this.tokens = tokens.iterator();
         }
     }
 
@@ -96,53 +326,335 @@ public class SyntaxAnalyzer {
         this.lrTable = table;
     }
 
+    /**
+     * 使用由 {@link ParserGenerator} 生成的直接编码的分析器代替按表解释的分析循环, 传入 null 时恢复按表分析
+     * <br>
+     * 生成的分析器必须由 {@link #loadLRTable} 所加载的分析表生成, 观察者收到的回调与按表分析时完全相同.
+     *
+     * @param parser 直接编码的分析器
+     */
+    public void loadDirectCodedParser(DirectCodedParser parser) {
+        this.directCodedParser = parser;
+    }
+
     public void run() {
         // DONE: 实现驱动程序
         // 你需要根据上面的输入来实现 LR 语法分析的驱动程序
         // 请分别在遇到 Shift, Reduce, Accept 的时候调用上面的 callWhenInShift, callWhenInReduce, callWhenInAccept
         // 否则用于为实验二打分的产生式输出可能不会正常工作
         
+        // 驱动程序只使用编译后的 int 矩阵分析表, 每步都不查 HashMap, 也不构造 Action
+        // 状态栈为 int 数组, 没有观察者需要符号栈时每一步都不分配对象
+        final var table = compressedTable ? this.lrTable.compileCompressed() : this.lrTable.compile();
+        if (profile != null && !profile.isFor(this.lrTable)) {
+            throw new RuntimeException("Profile was not created for the loaded table");
+        }
+        if (!consumers.isEmpty() && pipeline == null) {
+            pipeline = new ObserverPipeline(consumers, PIPELINE_CAPACITY);
+        }
+        activeTable = table;
+        activePipeline = consumers.isEmpty() ? null : this.pipeline;
+        keepsSymbols = this.keepsSymbolStack;
+        // 只有需要移入通知的观察者时才调用 callWhenInShift, 以免取状态对象
+        notifiesShift = shiftObservers().length > 0;
+        replaysUnitAttributes = keepsAttributes && !attributes.passesAllUnits();
+
         // init stacks
-        this.statusStack.push(this.lrTable.getInit());
-        this.symbolStack.push(new Symbol(Token.eof()));
-        
-        int p = 0;
-        boolean looping = true;
-        while(looping) {
-            var token = this.tokens.get(p);
-            var status = this.statusStack.peek();
-            var action = this.lrTable.getAction(status, token);
+        stateTop = -1;
+        pushState(table.initState());
+        symbolStack.clear();
+        if (keepsSymbols) {
+            symbolStack.add(new Symbol(Token.eof()));
+        }
+        attributes.clear();
+
+        // 流水线模式下先读出整个词法单元流, 使词法分析 (及其对符号表的写入) 在观察者线程启动之前全部完成
+        if (activePipeline != null && tokenBuffer == null) {
+            final var drained = new ArrayList<Token>();
+            this.tokens.forEachRemaining(drained::add);
+            this.tokens = drained.iterator();
+        }
+
+        // 两种输入方式: tokenBuffer 不为空时以 position 为下标读取, 否则从迭代器中逐个拉取 token
+        position = 0;
+        current = tokenBuffer == null ? this.tokens.next() : null;
+
+        if (activePipeline != null) {
+            activePipeline.start(table, tokenBuffer);
+        }
+        boolean accepted = false;
+        try {
+            if (directCodedParser != null) {
+                accepted = directCodedParser.parse(events);
+            } else {
+                accepted = parallel && tokenBuffer != null && profile == null ? parseInParallel(table) : parse(table);
+            }
+        } finally {
+            if (activePipeline != null) {
+                activePipeline.finish(accepted);
+            }
+            current = null;
+        }
+    }
+
+    /**
+     * 按表解释的分析循环
+     *
+     * @return 是否已接受
+     */
+    private boolean parse(CompiledLRTable table) {
+        final var profile = this.profile;
+        while(true) {
+            final var state = stateStack[stateTop];
+            final var code = currentCode();
+            if (profile != null) {
+                profile.record(state, code);
+            }
+            final var action = table.action(state, code);
             
-            switch(action.getKind()) {
-                case Shift -> {
-                    callWhenInShift(status, token);
-                    this.statusStack.push(action.getStatus());
-                    this.symbolStack.push(new Symbol(token));
-                    ++p;
+            switch(CompiledLRTable.kindOf(action)) {
+                case CompiledLRTable.SHIFT -> {
+                    onShift(state);
+                    pushState(CompiledLRTable.payloadOf(action));
+                }
+                case CompiledLRTable.REDUCE -> {
+                    final var production = CompiledLRTable.payloadOf(action);
+                    stateTop -= table.bodyLength(production);
+                    // goto 表项中还带有途经的单产生式链, 见 CompiledLRTable#gotoEntry
+                    final var entry = table.gotoEntry(stateStack[stateTop], production);
+                    onReduce(state, production, table.chainOf(entry));
+                    pushState(table.targetOf(entry));
+                }
+                case CompiledLRTable.ERROR -> {
+                    onError();
+                    return false;
+                }
+                case CompiledLRTable.ACCEPT -> {
+                    onAccept(state);
+                    return true;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * 并行分析各块语句, 按顺序重放各块的事件, 再串行分析余下的部分
+     *
+     * @return 是否已接受
+     */
+    private boolean parseInParallel(CompiledLRTable table) {
+        // 既没有观察者也没有流水线时, 各动作除状态栈与位置外没有副作用, 不必记录与重放事件
+        final var recordsEvents = !observers.isEmpty() || activePipeline != null;
+        final var cancelled = new AtomicBoolean(false);
+        final var tasks = StatementParallelParser.start(table, tokenBuffer, recordsEvents, cancelled);
+        try {
+            for (final var task : tasks) {
+                final var chunk = task.join();
+                // 起始状态不符或块内的分析弹出了起始状态时, 从该块起串行分析
+                if (!chunk.complete || chunk.baseState() != stateStack[stateTop]) {
                     break;
                 }
-                case Reduce -> {
-                    var prod = action.getProduction();
-                    callWhenInReduce(status, prod);
-                    for(int j = 0; j < prod.body().size(); ++j) {
-                        this.statusStack.pop();
-                        this.symbolStack.pop();
-                    }
-                    this.statusStack.push(this.lrTable.getGoto(this.statusStack.peek(), prod.head()));
-                    this.symbolStack.push(new Symbol(prod.head()));
+                if (!replay(chunk)) {
+                    return false;
                 }
-                case Error -> {
-                    Action.error();
-                    System.out.println("Syntax error!");
-                    looping = false;
+            }
+        } finally {
+            // 正在执行的块由取消标志停止, 尚未开始的块直接取消
+            cancelled.set(true);
+            tasks.forEach(task -> task.cancel(false));
+        }
+        return parse(table);
+    }
+
+    /**
+     * 重放一块的事件, 并把块末的状态栈接在当前栈上
+     *
+     * @return 块中没有出错时为 true
+     */
+    private boolean replay(StatementParallelParser.Chunk chunk) {
+        if (!chunk.recordsEvents) {
+            position = chunk.errorPosition < 0 ? chunk.end : chunk.errorPosition;
+            if (chunk.errorPosition >= 0) {
+                onError();
+                return false;
+            }
+        }
+        final var events = chunk.events;
+        for (int i = 0; i < chunk.eventCount; i++) {
+            final var state = events[i] >>> 2;
+            switch (events[i] & 3) {
+                case CompiledLRTable.SHIFT -> onShift(state);
+                case CompiledLRTable.REDUCE -> {
+                    onReduce(state, events[i + 1], events[i + 2]);
+                    i += 2;
+                }
+                default -> {
+                    onError();
+                    return false;
                 }
-                case Accept -> {
-                    callWhenInAccept(status);
-                    looping = false;
+            }
+        }
+        for (int i = 1; i <= chunk.stackTop; i++) {
+            pushState(chunk.stack[i]);
+        }
+        return true;
+    }
+
+    //==================== 以下为各动作除状态栈以外的副作用, 按表分析与直接编码的分析器共用 ====================//
+
+    private int currentCode() {
+        return tokenBuffer == null ? current.getKind().getCode() : tokenBuffer.getCode(position);
+    }
+
+    private void onShift(int state) {
+        final var buffer = this.tokenBuffer;
+        if (activePipeline != null) {
+            activePipeline.publishShift(state, position, current);
+        }
+        // 属性栈先压入新的一项, 观察者在回调中为其设置属性
+        if (keepsAttributes) {
+            attributes.pushToken(buffer == null ? current.getSymbolId() : buffer.getSymbolId(position));
+        }
+        if (buffer == null) {
+            if (notifiesShift) {
+                callWhenInShift(activeTable.status(state), current);
+            }
+            if (keepsSymbols) {
+                symbolStack.add(new Symbol(current));
+            }
+            current = this.tokens.next();
+        } else {
+            if (notifiesShift) {
+                callWhenInShift(activeTable.status(state), buffer, position);
+            }
+            if (keepsSymbols) {
+                symbolStack.add(new Symbol(buffer.get(position)));
+            }
+            ++position;
+        }
+    }
+
+    /**
+     * @param chain 规约后途经的单产生式链的编号, 没有时为 -1
+     */
+    private void onReduce(int state, int production, int chain) {
+        final var table = this.activeTable;
+        final var prod = table.production(production);
+        if (activePipeline != null) {
+            activePipeline.publishReduce(state, production, chain);
+        }
+        if (keepsAttributes) {
+            attributes.beginReduce(table.bodyLength(production));
+        }
+        if (chain < 0) {
+            callWhenInReduce(table.status(state), prod);
+        } else {
+            callWhenInReduce(table.status(state), prod, table.unitChain(chain));
+        }
+        if (keepsAttributes) {
+            attributes.endReduce();
+        }
+        if (keepsSymbols) {
+            final var length = table.bodyLength(production);
+            symbolStack.subList(symbolStack.size() - length, symbolStack.size()).clear();
+            symbolStack.add(new Symbol(prod.head()));
+        }
+        if (chain >= 0) {
+            onUnitChain(state, production, chain);
+        }
+    }
+
+    /**
+     * 为各单产生式补发规约, 并相应地维护属性栈与符号栈. 收到补发的是不接受合并通知的观察者,
+     * 以及接受合并通知却因不关心 production 而没有收到合并通知的观察者
+     */
+    private void onUnitChain(int state, int production, int chain) {
+        final var table = this.activeTable;
+        final var observers = reduceObservers();
+        for (final var unit : table.unitChain(chain)) {
+            final var listeners = observers[unit.index()];
+            if (listeners.length == 0 && !replaysUnitAttributes && !keepsSymbols) {
+                continue;
+            }
+            // 原样上传属性的列在补发时保持不变, 除非其观察者在补发中另行设置
+            final var replaysAttributes = replaysUnitAttributes || keepsAttributes && listeners.length > 0;
+            if (replaysAttributes) {
+                attributes.beginUnitReduce();
+            }
+            for (final var listener : listeners) {
+                if (!listener.acceptsUnitChains() || !handles(listener, production)) {
+                    listener.whenReduce(table.status(state), unit);
                 }
-                default -> {looping = false;}
+            }
+            if (replaysAttributes) {
+                attributes.endReduce();
+            }
+            if (keepsSymbols) {
+                symbolStack.set(symbolStack.size() - 1, new Symbol(unit.head()));
             }
         }
+    }
 
+    private void onAccept(int state) {
+        if (activePipeline != null) {
+            activePipeline.publishAccept(state);
+        }
+        callWhenInAccept(activeTable.status(state));
+    }
+
+    private void onError() {
+        // 从词法单元流读取时没有位置信息
+        final var buffer = this.tokenBuffer;
+        final var offset = buffer == null ? Diagnostics.UNKNOWN : buffer.getStart(position);
+        final var line = buffer == null ? Diagnostics.UNKNOWN : buffer.getLine(position);
+        diagnostics.report(Diagnostics.Code.SYNTAX_ERROR, offset, line, 0);
+        if (ownsDiagnostics) {
+            diagnostics.emit();
+        }
+    }
+
+    /**
+     * 直接编码的分析器通过它读取词法单元并触发各动作的副作用
+     */
+    private final class Events implements ParseEvents {
+        @Override
+        public int code() {
+            return currentCode();
+        }
+
+        @Override
+        public void shift(int state) {
+            onShift(state);
+        }
+
+        @Override
+        public void reduce(int state, int production) {
+            onReduce(state, production, -1);
+        }
+
+        @Override
+        public void reduce(int state, int production, int chain) {
+            onReduce(state, production, chain);
+        }
+
+        @Override
+        public void accept(int state) {
+            onAccept(state);
+        }
+
+        @Override
+        public void error(int state) {
+            onError();
+        }
+    }
+
+    private void pushState(int state) {
+        if (++stateTop == stateStack.length) {
+            stateStack = Arrays.copyOf(stateStack, stateStack.length * 2);
+        }
+        stateStack[stateTop] = state;
     }
 }
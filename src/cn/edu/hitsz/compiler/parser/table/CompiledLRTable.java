@@ -0,0 +1,595 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * 编译为稠密 int 矩阵的 LR 分析表
+ * <br>
+ * {@link Status} 中的 action 与 goto 表都是 HashMap, 每步查表都要对 TokenKind 或 NonTerminal 求哈希.
+ * 本类在构造时把它们展开为按 "状态 * 列数 + 列号" 寻址的 int 数组, 驱动程序每步只需几次数组访问:
+ * <ul>
+ *     <li>终结符以 {@code 码点 + 1} 为下标查 {@link #terminalColumn} 得到列号 (EOF 的码点为 -1, 对应下标 0)</li>
+ *     <li>动作编码为带标签的 int, 低 2 位为种类, 其余位为移入的目标状态或规约的产生式编号, 见 {@link #kindOf}, {@link #payloadOf}</li>
+ *     <li>goto 表的每一项为目标状态, 无转移时为 -1; 非终结符的列号即其在 {@link #nonTerminals} 中的下标</li>
+ *     <li>产生式头部的列号与产生式体的长度以产生式编号为下标存放, 规约时不需要访问 Production</li>
+ * </ul>
+ * 状态与产生式对象仍然保留, 以便在通知观察者时原样传出, 不会产生新的对象.
+ * <br>
+ * 消去了单产生式规约的分析表 (见 {@link LRTable#shortcutUnitProductions()}) 还要记下每个 goto 途经的单产生式链.
+ * 链按内容编号, 编号加一存放在 goto 表项的高位, 低位仍为目标状态, 因此不需要另一张表, 压缩形式也原样适用:
+ * 驱动程序在规约后用 {@link #gotoEntry} 取出表项, 从中得到目标状态与链的编号, 再用 {@link #unitChain} 取出途经的单产生式.
+ * <br>
+ * 由 {@link LRTable#compileCompressed()} 构造时, action 与 goto 表改用压缩的形式 (见 {@link Compressed}), 以更多的分支换取更小的体积,
+ * 使较大文法的分析表也能留在 L1 缓存中; 两种形式的体积可用 {@link #byteSize()} 比较.
+ */
+public final class CompiledLRTable {
+    public static final int ERROR = 0;
+    public static final int SHIFT = 1;
+    public static final int REDUCE = 2;
+    public static final int ACCEPT = 3;
+
+    /**
+     * @param action 编码后的动作
+     * @return 动作的种类, 为 {@link #ERROR}, {@link #SHIFT}, {@link #REDUCE}, {@link #ACCEPT} 之一
+     */
+    public static int kindOf(int action) {
+        return action & 3;
+    }
+
+    /**
+     * @param action 编码后的动作
+     * @return 移入动作的目标状态编号, 或规约动作的产生式编号
+     */
+    public static int payloadOf(int action) {
+        return action >>> 2;
+    }
+
+    /**
+     * @param state 当前状态编号
+     * @param code  当前词法单元的码点
+     * @return 编码后的动作
+     */
+    public int action(int state, int code) {
+        final var compressed = this.compressed;
+        if (compressed != null) {
+            return compressed.action(state, code);
+        }
+        final var column = code + 1 < terminalColumn.length ? terminalColumn[code + 1] : -1;
+        return column < 0 ? ERROR : actions[state * terminalCount + column];
+    }
+
+    /**
+     * @param state      规约后栈顶的状态编号
+     * @param production 规约所用产生式的编号
+     * @return 应转移到的状态编号. 无转移时非压缩形式返回 -1, 压缩形式则返回该非终结符的默认转移;
+     * 需要区分时先用 {@link #hasGoto} 判断
+     */
+    public int gotoAfterReduce(int state, int production) {
+        return targetOf(gotoEntry(state, production));
+    }
+
+    /**
+     * 判断规约后是否有转移. 分析过程中按表规约之后总是有转移, 只有在表外推算状态时才需要判断
+     *
+     * @param state      规约后栈顶的状态编号
+     * @param production 规约所用产生式的编号
+     * @return 有无转移, 与是否压缩无关
+     */
+    public boolean hasGoto(int state, int production) {
+        final var status = state >= 0 && state < statuses.length ? statuses[state] : null;
+        return status != null && !status.getGoto(productions[production].head()).isError();
+    }
+
+    /**
+     * @param state      规约后栈顶的状态编号
+     * @param production 规约所用产生式的编号
+     * @return 转移之前途经的单产生式链的编号, 没有时为 -1. 只应对有转移的 state 调用
+     */
+    public int unitChainAfterReduce(int state, int production) {
+        return chainOf(gotoEntry(state, production));
+    }
+
+    /**
+     * 规约后既要转移又要查单产生式链时, 只查一次 goto 表, 再用 {@link #targetOf} 与 {@link #chainOf} 取出两部分
+     *
+     * @param state      规约后栈顶的状态编号
+     * @param production 规约所用产生式的编号
+     * @return goto 表项
+     */
+    public int gotoEntry(int state, int production) {
+        final var compressed = this.compressed;
+        if (compressed != null) {
+            return compressed.gotoAfterReduce(state, productionHead[production]);
+        }
+        return gotos[state * nonTerminalCount + productionHead[production]];
+    }
+
+    /**
+     * @param entry goto 表项
+     * @return 应转移到的状态编号, 无转移时为 -1
+     */
+    public int targetOf(int entry) {
+        // 算术右移去掉高位的链编号; 没有单产生式链时 chainBits 为 0, 表项即目标状态
+        return entry << chainBits >> chainBits;
+    }
+
+    /**
+     * @param entry 有转移的 goto 表项
+     * @return 途经的单产生式链的编号, 没有时为 -1
+     */
+    public int chainOf(int entry) {
+        return chainBits == 0 ? -1 : (entry >>> (Integer.SIZE - chainBits)) - 1;
+    }
+
+    /**
+     * @param chain 单产生式链的编号
+     * @return 按规约顺序排列的单产生式
+     */
+    public List<Production> unitChain(int chain) {
+        return unitChains.get(chain);
+    }
+
+    /**
+     * @return 是否有 goto 途经单产生式链, 没有时 {@link #unitChainAfterReduce} 总是返回 -1
+     */
+    public boolean hasUnitChains() {
+        return chainBits != 0;
+    }
+
+    /**
+     * @param production 产生式编号
+     * @return 产生式体的长度, 即规约时需要弹出的状态数
+     */
+    public int bodyLength(int production) {
+        return productionLength[production];
+    }
+
+    /**
+     * @param production 产生式编号
+     * @return 产生式头部的非终结符的列号, 头部相同的产生式规约后转移到的状态相同
+     */
+    public int headOf(int production) {
+        return productionHead[production];
+    }
+
+    /**
+     * @return 状态编号的上界 (不含)
+     */
+    public int stateCount() {
+        return statuses.length;
+    }
+
+    /**
+     * @return 产生式编号的上界 (不含)
+     */
+    public int productionCount() {
+        return productions.length;
+    }
+
+    /**
+     * @return 分析表中各终结符的码点, 按列的顺序排列
+     */
+    public int[] terminalCodes() {
+        final var codes = new int[terminalCount];
+        for (int i = 0; i < terminalColumn.length; i++) {
+            if (terminalColumn[i] >= 0) {
+                codes[terminalColumn[i]] = i - 1;
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * @return action 表, goto 表以及终结符列号映射所占的字节数, 不含两种形式共有的产生式信息与状态对象
+     */
+    public int byteSize() {
+        if (compressed != null) {
+            return compressed.byteSize();
+        }
+        return Integer.BYTES * (terminalColumn.length + actions.length + gotos.length);
+    }
+
+    /**
+     * @return 是否为压缩形式
+     */
+    public boolean isCompressed() {
+        return compressed != null;
+    }
+
+    /**
+     * @return 起始状态的编号
+     */
+    public int initState() {
+        return initState;
+    }
+
+    /**
+     * @param state 状态编号
+     * @return 对应的状态对象
+     */
+    public Status status(int state) {
+        return statuses[state];
+    }
+
+    /**
+     * @param production 产生式编号
+     * @return 对应的产生式对象
+     */
+    public Production production(int production) {
+        return productions[production];
+    }
+
+    CompiledLRTable(List<Status> statusInIndexOrder, List<TokenKind> terminals, List<NonTerminal> nonTerminals,
+                    Map<Status, Map<NonTerminal, List<Production>>> unitChains, boolean compress) {
+        var stateCount = 0;
+        for (final var status : statusInIndexOrder) {
+            stateCount = Math.max(stateCount, status.index() + 1);
+        }
+        this.statuses = new Status[stateCount];
+        for (final var status : statusInIndexOrder) {
+            statuses[status.index()] = status;
+        }
+        this.initState = statusInIndexOrder.get(0).index();
+
+        this.terminalCount = terminals.size();
+        this.terminalColumn = new int[TokenKind.codeLimit() + 1];
+        Arrays.fill(terminalColumn, -1);
+        for (int column = 0; column < terminals.size(); column++) {
+            terminalColumn[terminals.get(column).getCode() + 1] = column;
+        }
+
+        this.nonTerminalCount = nonTerminals.size();
+        final var nonTerminalColumn = new HashMap<NonTerminal, Integer>();
+        for (int column = 0; column < nonTerminals.size(); column++) {
+            nonTerminalColumn.put(nonTerminals.get(column), column);
+        }
+
+        // 分析表可能使用改写过的产生式 (见 TableGenerator#setLeftRecursiveLists), 编号相同时以规约动作中的产生式为准
+        final var productionsInOrder = new ArrayList<>(GrammarInfo.getProductionsInOrder());
+        for (final var status : statusInIndexOrder) {
+            for (final var terminal : terminals) {
+                final var action = status.getAction(terminal);
+                if (action.getKind() == Action.ActionKind.Reduce) {
+                    final var production = action.getProduction();
+                    final var position = production.index() - 1;
+                    if (position >= 0 && position < productionsInOrder.size()
+                            && productionsInOrder.get(position).index() == production.index()) {
+                        productionsInOrder.set(position, production);
+                    }
+                }
+            }
+        }
+        var productionCount = 0;
+        for (final var production : productionsInOrder) {
+            productionCount = Math.max(productionCount, production.index() + 1);
+        }
+        this.productions = new Production[productionCount];
+        this.productionHead = new int[productionCount];
+        this.productionLength = new int[productionCount];
+        for (final var production : productionsInOrder) {
+            productions[production.index()] = production;
+            productionHead[production.index()] = nonTerminalColumn.getOrDefault(production.head(), 0);
+            productionLength[production.index()] = production.body().size();
+        }
+
+        // 单产生式链按内容编号, 相同的链只保存一份. 目标状态占低位 (留出符号位), 其余的高位存放链编号加一
+        this.unitChains = new ArrayList<>();
+        final var chainIds = new HashMap<List<Production>, Integer>();
+        unitChains.values().forEach(chains -> chains.values().forEach(chain -> chainIds.computeIfAbsent(chain, key -> {
+            this.unitChains.add(key);
+            return this.unitChains.size() - 1;
+        })));
+        final var targetBits = Integer.SIZE - Integer.numberOfLeadingZeros(stateCount) + 1;
+        this.chainBits = unitChains.isEmpty() ? 0 : Integer.SIZE - targetBits;
+        if (chainBits > 0 && this.unitChains.size() >= (1 << chainBits) - 1) {
+            throw new RuntimeException("Too many unit production chains for %d states".formatted(stateCount));
+        }
+
+        final var actions = new int[stateCount * terminalCount];
+        final var gotos = new int[stateCount * nonTerminalCount];
+        Arrays.fill(gotos, -1);
+        for (final var status : statusInIndexOrder) {
+            final var row = status.index();
+            for (int column = 0; column < terminalCount; column++) {
+                actions[row * terminalCount + column] = encode(status.getAction(terminals.get(column)));
+            }
+            for (int column = 0; column < nonTerminalCount; column++) {
+                final var nonTerminal = nonTerminals.get(column);
+                final var target = status.getGoto(nonTerminal);
+                if (target.isError()) {
+                    continue;
+                }
+                final var chain = unitChains.getOrDefault(status, Map.of()).get(nonTerminal);
+                final var chainField = chain == null ? 0 : chainIds.get(chain) + 1;
+                gotos[row * nonTerminalCount + column] = chainField << targetBits | target.index();
+            }
+        }
+
+        // 压缩形式只保留压缩后的数组
+        this.compressed = compress ? new Compressed(stateCount, terminalColumn, actions, gotos, nonTerminalCount) : null;
+        this.actions = compress ? null : actions;
+        this.gotos = compress ? null : gotos;
+    }
+
+    private static int encode(Action action) {
+        return switch (action.getKind()) {
+            case Shift -> (action.getStatus().index() << 2) | SHIFT;
+            case Reduce -> (action.getProduction().index() << 2) | REDUCE;
+            case Accept -> ACCEPT;
+            case Error -> ERROR;
+        };
+    }
+
+    private final int initState;
+    private final int terminalCount;
+    private final int nonTerminalCount;
+    private final int[] terminalColumn;
+    private final int[] actions;
+    private final int[] gotos;
+    // goto 表项中链编号所占的高位数, 没有单产生式链时为 0
+    private final int chainBits;
+    private final List<List<Production>> unitChains;
+    private final int[] productionHead;
+    private final int[] productionLength;
+    private final Status[] statuses;
+    private final Production[] productions;
+    private final Compressed compressed;
+
+    /**
+     * 压缩形式的 action 与 goto 表
+     * <br>
+     * action 表依次做以下处理:
+     * <ol>
+     *     <li>默认规约: 所有规约动作都使用同一条产生式的状态, 把该规约作为默认动作, 出错的格子也按它规约.
+     *     只有规约动作的状态不再查表. 这样出错时会多做几次规约, 但这些规约不消耗词法单元,
+     *     而 LR 分析表在移入错误的词法单元之前一定会遇到出错的格子, 因此仍在同一个词法单元上报告错误</li>
+     *     <li>去掉默认动作后, 内容相同的终结符列合并为一列, 内容相同 (默认动作也相同) 的行合并为一行</li>
+     *     <li>剩余的显式动作按行做梳状压缩 (row displacement): 每行选一个偏移 base, 使该行各列的 base + 列号互不冲突地落在
+     *     同一个数组中, 并在 check 数组中记下格子属于哪一行; 查表时 check 不符即表示该格子为空, 取该行的默认动作</li>
+     * </ol>
+     * goto 表只在规约后查询, 而合法的规约之后一定有转移, 因此每个非终结符取出现最多的表项 (目标状态及途经的单产生式链) 为默认值,
+     * 其余的转移以非终结符为行, 以状态为列同样做梳状压缩.
+     */
+    private static final class Compressed {
+        Compressed(int stateCount, int[] terminalColumn, int[] actions, int[] gotos, int nonTerminalCount) {
+            final var terminalCount = stateCount == 0 ? 0 : actions.length / stateCount;
+
+            // 默认规约与去掉默认动作后的显式动作
+            final var defaults = new int[stateCount];
+            final var explicit = new int[actions.length];
+            for (int state = 0; state < stateCount; state++) {
+                var reduce = ERROR;
+                var single = true;
+                for (int column = 0; column < terminalCount; column++) {
+                    final var action = actions[state * terminalCount + column];
+                    if (kindOf(action) == REDUCE) {
+                        single &= reduce == ERROR || reduce == action;
+                        reduce = action;
+                    }
+                }
+                defaults[state] = single ? reduce : ERROR;
+                for (int column = 0; column < terminalCount; column++) {
+                    final var action = actions[state * terminalCount + column];
+                    explicit[state * terminalCount + column] = action == defaults[state] ? ERROR : action;
+                }
+            }
+
+            // 合并内容相同的列
+            final var columnClass = new int[terminalCount];
+            final var columnClasses = new HashMap<List<Integer>, Integer>();
+            for (int column = 0; column < terminalCount; column++) {
+                final var cells = new ArrayList<Integer>(stateCount);
+                for (int state = 0; state < stateCount; state++) {
+                    cells.add(explicit[state * terminalCount + column]);
+                }
+                final var next = columnClasses.size();
+                columnClass[column] = columnClasses.computeIfAbsent(cells, key -> next);
+            }
+            final var classCount = columnClasses.size();
+            this.columnOf = new int[terminalColumn.length];
+            for (int i = 0; i < terminalColumn.length; i++) {
+                columnOf[i] = terminalColumn[i] < 0 ? -1 : columnClass[terminalColumn[i]];
+            }
+
+            // 合并内容相同的行, 行的内容为合并后各列的显式动作加上默认动作
+            this.rowOf = new int[stateCount];
+            final var rows = new HashMap<List<Integer>, Integer>();
+            final var rowCells = new ArrayList<int[]>();
+            final var rowDefaults = new ArrayList<Integer>();
+            for (int state = 0; state < stateCount; state++) {
+                final var cells = new int[classCount];
+                for (int column = 0; column < terminalCount; column++) {
+                    cells[columnClass[column]] = explicit[state * terminalCount + column];
+                }
+                final var key = new ArrayList<Integer>(classCount + 1);
+                for (final var cell : cells) {
+                    key.add(cell);
+                }
+                key.add(defaults[state]);
+                final var existing = rows.get(key);
+                if (existing != null) {
+                    rowOf[state] = existing;
+                } else {
+                    rowOf[state] = rowCells.size();
+                    rows.put(key, rowCells.size());
+                    rowCells.add(cells);
+                    rowDefaults.add(defaults[state]);
+                }
+            }
+            this.defaultAction = rowDefaults.stream().mapToInt(Integer::intValue).toArray();
+
+            final var rowColumns = new int[rowCells.size()][];
+            final var rowValues = new int[rowCells.size()][];
+            for (int row = 0; row < rowCells.size(); row++) {
+                final var cells = rowCells.get(row);
+                rowColumns[row] = IntStream.range(0, classCount).filter(column -> cells[column] != ERROR).toArray();
+                rowValues[row] = Arrays.stream(rowColumns[row]).map(column -> cells[column]).toArray();
+            }
+            final var actionComb = new Comb(rowColumns, rowValues, classCount);
+            this.base = actionComb.base;
+            this.check = actionComb.check;
+            this.values = actionComb.values;
+
+            // goto 表: 先按行的顺序收集每个非终结符的所有转移, 避免按列跨行访问整个稠密矩阵
+            final var gotoStates = new ArrayList<List<Integer>>(nonTerminalCount);
+            for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+                gotoStates.add(new ArrayList<>());
+            }
+            for (int state = 0; state < stateCount; state++) {
+                for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+                    if (gotos[state * nonTerminalCount + nonTerminal] >= 0) {
+                        gotoStates.get(nonTerminal).add(state);
+                    }
+                }
+            }
+
+            // 每个非终结符出现最多的表项作为默认值 (次数相同时取较小的), 其余的转移做梳状压缩.
+            // 表项的高位可能带有单产生式链的编号, 不能直接作为下标, 因此用 HashMap 计数
+            this.gotoDefault = new int[nonTerminalCount];
+            final var gotoColumns = new int[nonTerminalCount][];
+            final var gotoTargets = new int[nonTerminalCount][];
+            final var counts = new HashMap<Integer, Integer>();
+            for (int nonTerminal = 0; nonTerminal < nonTerminalCount; nonTerminal++) {
+                final var column = nonTerminal;
+                final var states = gotoStates.get(nonTerminal).stream().mapToInt(Integer::intValue).toArray();
+                final var targets = Arrays.stream(states).map(state -> gotos[state * nonTerminalCount + column]).toArray();
+                var best = -1;
+                for (final var target : targets) {
+                    final int count = counts.merge(target, 1, Integer::sum);
+                    final int bestCount = best < 0 ? 0 : counts.get(best);
+                    if (count > bestCount || count == bestCount && target < best) {
+                        best = target;
+                    }
+                }
+                counts.clear();
+                gotoDefault[nonTerminal] = best;
+
+                final var defaultTarget = best;
+                final var exceptions = IntStream.range(0, states.length).filter(i -> targets[i] != defaultTarget).toArray();
+                gotoColumns[nonTerminal] = Arrays.stream(exceptions).map(i -> states[i]).toArray();
+                gotoTargets[nonTerminal] = Arrays.stream(exceptions).map(i -> targets[i]).toArray();
+            }
+            final var gotoComb = new Comb(gotoColumns, gotoTargets, stateCount);
+            this.gotoBase = gotoComb.base;
+            this.gotoCheck = gotoComb.check;
+            this.gotoValues = gotoComb.values;
+        }
+
+        int action(int state, int code) {
+            final var row = rowOf[state];
+            final var base = this.base[row];
+            // 只有默认规约的行不必查看词法单元
+            if (base >= 0) {
+                final var column = code + 1 < columnOf.length ? columnOf[code + 1] : -1;
+                if (column >= 0 && check[base + column] == row) {
+                    return values[base + column];
+                }
+            }
+            return defaultAction[row];
+        }
+
+        int gotoAfterReduce(int state, int nonTerminal) {
+            final var base = gotoBase[nonTerminal];
+            if (base >= 0 && gotoCheck[base + state] == nonTerminal) {
+                return gotoValues[base + state];
+            }
+            return gotoDefault[nonTerminal];
+        }
+
+        int byteSize() {
+            return Integer.BYTES * (columnOf.length + rowOf.length + defaultAction.length
+                + base.length + check.length + values.length
+                + gotoBase.length + gotoDefault.length + gotoCheck.length + gotoValues.length);
+        }
+
+        private final int[] columnOf;
+        private final int[] rowOf;
+        private final int[] defaultAction;
+        private final int[] base;
+        private final int[] check;
+        private final int[] values;
+        private final int[] gotoBase;
+        private final int[] gotoDefault;
+        private final int[] gotoCheck;
+        private final int[] gotoValues;
+    }
+
+    /**
+     * 梳状压缩 (row displacement) 的结果
+     * <br>
+     * 输入为稀疏的行. 非空格子较多的行先放; 每行取第一个使其所有非空格子都落在空位上的偏移. 没有非空格子的行偏移为 -1.
+     * 数组的长度为最大偏移加上行宽, 因此任何偏移加列号都不会越界.
+     */
+    private static final class Comb {
+        /**
+         * @param columns 各行非空格子的列号, 按升序排列
+         * @param values  各行非空格子的值
+         * @param width   行宽
+         */
+        Comb(int[][] columns, int[][] values, int width) {
+            this.base = new int[columns.length];
+            Arrays.fill(base, -1);
+
+            final var order = new ArrayList<Integer>();
+            for (int row = 0; row < columns.length; row++) {
+                if (columns[row].length > 0) {
+                    order.add(row);
+                }
+            }
+            order.sort(Comparator.comparingInt((Integer row) -> columns[row].length).reversed()
+                .thenComparingInt(row -> row));
+
+            final var occupied = new BitSet();
+            var size = 0;
+            for (final var row : order) {
+                final var filled = columns[row];
+                // 每次都跳到能放下该行第一个非空格子的下一个偏移
+                var offset = 0;
+                while (true) {
+                    offset = occupied.nextClearBit(offset + filled[0]) - filled[0];
+                    if (fits(occupied, offset, filled)) {
+                        break;
+                    }
+                    offset++;
+                }
+                base[row] = offset;
+                for (final var column : filled) {
+                    occupied.set(offset + column);
+                }
+                size = Math.max(size, offset + width);
+            }
+
+            this.check = new int[size];
+            this.values = new int[size];
+            Arrays.fill(check, -1);
+            for (final var row : order) {
+                for (int i = 0; i < columns[row].length; i++) {
+                    check[base[row] + columns[row][i]] = row;
+                    this.values[base[row] + columns[row][i]] = values[row][i];
+                }
+            }
+        }
+
+        private static boolean fits(BitSet occupied, int offset, int[] columns) {
+            for (final var column : columns) {
+                if (occupied.get(offset + column)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        final int[] base;
+        final int[] check;
+        final int[] values;
+    }
+}
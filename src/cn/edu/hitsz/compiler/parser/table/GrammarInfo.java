@@ -10,11 +10,19 @@ import java.util.*;
  * 读取语法文件 (grammar.txt), 获得产生式的原始字符串和非终结符
  * <br>
  * 你不应该修改此文件
+ * <br>
+ * 除产生式外, 语法文件中还可以有形如 {@code %left + -;} 的优先级声明 (关键字为 %left, %right 或 %nonassoc),
+ * 供 {@link TableGenerator} 像 yacc 那样消解移入-规约冲突, 见 {@link Precedence}. 声明行不占产生式编号;
+ * 把声明写在所有产生式之后可以使产生式编号仍与行号相同.
  */
 public class GrammarInfo {
     private final Map<String, NonTerminal> nonTerminals = new HashMap<>();
     private final Map<String, Production> productions = new HashMap<>();
     private final List<Production> productionsInOrder = new ArrayList<>();
+    // 优先级声明的原文 (去掉分号), 按出现的顺序; 以及由它们得出的终结符与产生式的优先级
+    private final List<String> declarations = new ArrayList<>();
+    private final Map<TokenKind, Precedence> terminalPrecedence = new HashMap<>();
+    private final Map<Production, Precedence> productionPrecedence = new HashMap<>();
 
     private NonTerminal getOrCreateNonTerminal(String name) {
         nonTerminals.computeIfAbsent(name, NonTerminal::new);
@@ -25,6 +33,11 @@ public class GrammarInfo {
         final var lines = FileUtils.readLines(FilePathConfig.GRAMMAR_PATH);
         for (int idx = 0; idx < lines.size(); idx++) {
             final var line = lines.get(idx);
+            if (line.startsWith("%")) {
+                declarePrecedence(line.replace(";", ""));
+                continue;
+            }
+
             // 形如 `A -> B ( id intConst ) C;` 的产生式
             // 先删除分号, 按 -> 切, 再按空格切 body
             final var withoutComma = line.replace(";", "");
@@ -43,11 +56,88 @@ public class GrammarInfo {
                 }
             }
 
-            // idx + 1 是为了让 production 的标号与行号相同, 方便查看
-            final var production = new Production(idx + 1, head, body);
+            // 标号从 1 开始, 没有优先级声明时与行号相同, 方便查看
+            final var production = new Production(productionsInOrder.size() + 1, head, body);
             productionsInOrder.add(production);
             productions.put(withoutComma, production);
         }
+        assignProductionPrecedence();
+    }
+
+    /**
+     * 以预先解析好的产生式构造, 不读取 grammar.txt
+     *
+     * @param texts  各产生式去掉分号后的原文, 按行号顺序
+     * @param heads  各产生式头部的名字
+     * @param bodies 各产生式体中各符号的名字
+     * @param declarations 优先级声明的原文 (去掉分号), 按出现的顺序
+     */
+    private GrammarInfo(List<String> texts, List<String> heads, List<List<String>> bodies, List<String> declarations) {
+        declarations.forEach(this::declarePrecedence);
+        for (int idx = 0; idx < texts.size(); idx++) {
+            final var head = getOrCreateNonTerminal(heads.get(idx));
+            final var body = new ArrayList<Term>();
+            for (final var termName : bodies.get(idx)) {
+                if (TokenKind.isAllowed(termName)) {
+                    body.add(TokenKind.fromString(termName));
+                } else {
+                    body.add(getOrCreateNonTerminal(termName));
+                }
+            }
+
+            final var production = new Production(idx + 1, head, body);
+            productionsInOrder.add(production);
+            productions.put(texts.get(idx), production);
+        }
+        assignProductionPrecedence();
+    }
+
+    /**
+     * 处理一行优先级声明, 越靠后的声明优先级越高
+     *
+     * @param declaration 去掉分号的声明, 形如 {@code %left + -}
+     */
+    private void declarePrecedence(String declaration) {
+        final var words = declaration.trim().split(" +");
+        final var precedence = new Precedence(declarations.size() + 1, Precedence.associativityOf(words[0]));
+        for (int i = 1; i < words.length; i++) {
+            if (!TokenKind.isAllowed(words[i])) {
+                throw new RuntimeException("Unknown terminal in precedence declaration: " + words[i]);
+            }
+            if (terminalPrecedence.put(TokenKind.fromString(words[i]), precedence) != null) {
+                throw new RuntimeException("Precedence of %s declared twice".formatted(words[i]));
+            }
+        }
+        declarations.add(declaration);
+    }
+
+    /**
+     * 产生式的优先级为其体中最右边一个有优先级的终结符的优先级
+     */
+    private void assignProductionPrecedence() {
+        for (final var production : productionsInOrder) {
+            final var body = production.body();
+            for (int i = body.size() - 1; i >= 0; i--) {
+                if (body.get(i) instanceof TokenKind terminal && terminalPrecedence.containsKey(terminal)) {
+                    productionPrecedence.put(production, terminalPrecedence.get(terminal));
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 由 {@link TableCache} 调用, 以缓存中的产生式初始化, 使之后不必再读取与切分 grammar.txt. 已经初始化时不做任何事.
+     *
+     * @return 初始化后的产生式, 按行号顺序
+     */
+    static List<Production> installIfAbsent(List<String> texts, List<String> heads, List<List<String>> bodies,
+                                            List<String> declarations) {
+        if (instance == null) {
+            instance = new GrammarInfo(texts, heads, bodies, declarations);
+        }
+
+        return getProductionsInOrder();
     }
 
     // 为了防止有人看不懂, 就不用枚举定义单例了
@@ -95,4 +185,27 @@ public class GrammarInfo {
     public static List<Production> getProductionsInOrder() {
         return Collections.unmodifiableList(getInstance().productionsInOrder);
     }
+
+    /**
+     * @param terminal 终结符
+     * @return 终结符声明的优先级, 未声明时为空
+     */
+    public static Optional<Precedence> getPrecedence(TokenKind terminal) {
+        return Optional.ofNullable(getInstance().terminalPrecedence.get(terminal));
+    }
+
+    /**
+     * @param production 产生式
+     * @return 产生式的优先级, 其体中没有声明了优先级的终结符时为空
+     */
+    public static Optional<Precedence> getPrecedence(Production production) {
+        return Optional.ofNullable(getInstance().productionPrecedence.get(production));
+    }
+
+    /**
+     * @return 优先级声明的原文 (去掉分号), 按出现的顺序, 由 {@link TableCache} 写入缓存
+     */
+    static List<String> getPrecedenceDeclarations() {
+        return Collections.unmodifiableList(getInstance().declarations);
+    }
 }
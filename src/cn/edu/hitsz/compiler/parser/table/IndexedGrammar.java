@@ -0,0 +1,279 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 编为整数的文法, 供 {@link TableGenerator} 与 {@link LR1Builder} 构造项目集族
+ * <br>
+ * 为了能处理较大的文法, 项目与符号都编为 int:
+ * <ul>
+ *     <li>终结符编号为 0 至 T - 1, 非终结符编号为 T 至 T + N - 1, 顺序与构造时给出的列表相同</li>
+ *     <li>第 p 条产生式的点在位置 d 的项目编号为 {@code itemBase[p] + d}, 因此项目的后继项即编号加一</li>
+ *     <li>FIRST, FOLLOW 与向前看符号集合都是以终结符编号为下标的 BitSet</li>
+ * </ul>
+ * 以各非终结符为头部的产生式按头部预先分组; 每个项目点后第二个符号起的串 β 的 FIRST 集与是否可空也预先算好.
+ * 各数组在构造后不再修改, 为了在热循环中直接访问而设为包内可见.
+ */
+final class IndexedGrammar {
+    /**
+     * @param productions  文法的产生式, 第一条为拓广文法的起始产生式
+     * @param terminals    终结符 (须包含 EOF)
+     * @param nonTerminals 非终结符
+     */
+    IndexedGrammar(List<Production> productions, List<TokenKind> terminals, List<NonTerminal> nonTerminals) {
+        this.productions = productions;
+        this.terminals = terminals;
+        this.nonTerminals = nonTerminals;
+        this.terminalCount = terminals.size();
+        this.symbolCount = terminals.size() + nonTerminals.size();
+        this.eof = terminals.indexOf(TokenKind.eof());
+
+        final var symbolOf = new HashMap<Term, Integer>();
+        for (int i = 0; i < terminals.size(); i++) {
+            symbolOf.put(terminals.get(i), i);
+        }
+        for (int i = 0; i < nonTerminals.size(); i++) {
+            symbolOf.put(nonTerminals.get(i), terminalCount + i);
+        }
+
+        // 为产生式与项目编号
+        this.bodies = new int[productions.size()][];
+        this.heads = new int[productions.size()];
+        this.itemBase = new int[productions.size()];
+        var itemCount = 0;
+        final var byHead = new ArrayList<List<Integer>>();
+        for (int i = 0; i < nonTerminals.size(); i++) {
+            byHead.add(new ArrayList<>());
+        }
+        for (int p = 0; p < productions.size(); p++) {
+            final var production = productions.get(p);
+            final var body = production.body();
+            bodies[p] = new int[body.size()];
+            for (int i = 0; i < body.size(); i++) {
+                final var symbol = symbolOf.get(body.get(i));
+                if (symbol == null) {
+                    throw new RuntimeException("Unknown symbol %s in %s".formatted(body.get(i), production));
+                }
+                bodies[p][i] = symbol;
+            }
+            heads[p] = symbolOf.get(production.head()) - terminalCount;
+            byHead.get(heads[p]).add(p);
+            itemBase[p] = itemCount;
+            itemCount += body.size() + 1;
+        }
+        this.productionsOf = new int[nonTerminals.size()][];
+        for (int i = 0; i < nonTerminals.size(); i++) {
+            productionsOf[i] = byHead.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        this.itemProduction = new int[itemCount];
+        this.itemSymbol = new int[itemCount];
+        for (int p = 0; p < productions.size(); p++) {
+            for (int d = 0; d <= bodies[p].length; d++) {
+                itemProduction[itemBase[p] + d] = p;
+                itemSymbol[itemBase[p] + d] = d < bodies[p].length ? bodies[p][d] : -1;
+            }
+        }
+
+        this.first = new BitSet[nonTerminals.size()];
+        this.nullable = new boolean[nonTerminals.size()];
+        calcFirst();
+        this.firstAfterNext = new BitSet[itemCount];
+        this.nullableAfterNext = new boolean[itemCount];
+        calcFirstAfterNext();
+        this.follow = new BitSet[nonTerminals.size()];
+        calcFollow();
+    }
+
+    final List<Production> productions;
+    final List<TokenKind> terminals;
+    final List<NonTerminal> nonTerminals;
+    final int terminalCount;
+    final int symbolCount;
+    final int eof;
+
+    /**
+     * 产生式体中各符号的编号, 与产生式头部对应的非终结符下标 (从 0 开始, 不加 T)
+     */
+    final int[][] bodies;
+    final int[] heads;
+
+    /**
+     * 以非终结符下标为索引, 以它为头部的产生式
+     */
+    final int[][] productionsOf;
+
+    /**
+     * 产生式的第一个项目编号; 项目所属的产生式, 以及点后的符号 (点在末尾时为 -1)
+     */
+    final int[] itemBase;
+    final int[] itemProduction;
+    final int[] itemSymbol;
+
+    /**
+     * 以非终结符下标为索引的 FIRST 集, 可空性与 FOLLOW 集
+     */
+    final BitSet[] first;
+    final boolean[] nullable;
+    final BitSet[] follow;
+
+    /**
+     * 以项目编号为索引, 点后第二个符号起的串的 FIRST 集与可空性
+     */
+    final BitSet[] firstAfterNext;
+    final boolean[] nullableAfterNext;
+
+    int itemCount() {
+        return itemSymbol.length;
+    }
+
+    Term symbolToTerm(int symbol) {
+        return symbol < terminalCount ? terminals.get(symbol) : nonTerminals.get(symbol - terminalCount);
+    }
+
+    /**
+     * @return 项目的点在末尾时所属产生式在 productions 中的下标, 否则为 -1
+     */
+    int reducedProduction(int item) {
+        return itemSymbol[item] < 0 ? itemProduction[item] : -1;
+    }
+
+    /**
+     * @return 项目的文本, 用于调试
+     */
+    String itemToString(int item) {
+        final var p = itemProduction[item];
+        final var dot = item - itemBase[p];
+        final var builder = new StringBuilder();
+        builder.append(productions.get(p).head()).append(" ->");
+        for (int i = 0; i < bodies[p].length; i++) {
+            if (i == dot) {
+                builder.append(" .");
+            }
+            builder.append(' ').append(symbolToTerm(bodies[p][i]));
+        }
+        if (dot == bodies[p].length) {
+            builder.append(" .");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return 项目与向前看符号的文本, 用于调试
+     */
+    String itemToString(int item, BitSet lookaheads) {
+        final var builder = new StringBuilder(itemToString(item));
+        builder.append(", [");
+        var first = true;
+        for (int t = lookaheads.nextSetBit(0); t >= 0; t = lookaheads.nextSetBit(t + 1)) {
+            builder.append(first ? "" : " ").append(terminals.get(t));
+            first = false;
+        }
+        return builder.append(']').toString();
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private void calcFirst() {
+        for (int i = 0; i < first.length; i++) {
+            first[i] = new BitSet(terminalCount);
+        }
+
+        // 不动点迭代, 直到各非终结符的 FIRST 集与可空性都不再变化
+        var changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productions.size(); p++) {
+                final var head = heads[p];
+                final var before = first[head].cardinality();
+                var allNullable = true;
+                for (final var symbol : bodies[p]) {
+                    if (symbol < terminalCount) {
+                        first[head].set(symbol);
+                        allNullable = false;
+                        break;
+                    }
+                    first[head].or(first[symbol - terminalCount]);
+                    if (!nullable[symbol - terminalCount]) {
+                        allNullable = false;
+                        break;
+                    }
+                }
+                if (first[head].cardinality() != before || allNullable && !nullable[head]) {
+                    nullable[head] |= allNullable;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private void calcFirstAfterNext() {
+        for (int p = 0; p < productions.size(); p++) {
+            final var body = bodies[p];
+            // 从产生式末尾向前累积后缀 body[k ..] 的 FIRST 集; 点在 d 时 β 为 body[d + 1 ..]
+            var suffixFirst = new BitSet(terminalCount);
+            var suffixNullable = true;
+            firstAfterNext[itemBase[p] + body.length] = suffixFirst;
+            nullableAfterNext[itemBase[p] + body.length] = true;
+            for (int k = body.length; k > 0; k--) {
+                final var dot = k - 1;
+                firstAfterNext[itemBase[p] + dot] = suffixFirst;
+                nullableAfterNext[itemBase[p] + dot] = suffixNullable;
+
+                final var symbol = body[dot];
+                final var next = new BitSet(terminalCount);
+                if (symbol < terminalCount) {
+                    next.set(symbol);
+                    suffixNullable = false;
+                } else {
+                    next.or(first[symbol - terminalCount]);
+                    if (nullable[symbol - terminalCount]) {
+                        next.or(suffixFirst);
+                    } else {
+                        suffixNullable = false;
+                    }
+                }
+                suffixFirst = next;
+            }
+        }
+    }
+
+    private void calcFollow() {
+        for (int i = 0; i < follow.length; i++) {
+            follow[i] = new BitSet(terminalCount);
+        }
+        // 起始符号后面只能是 EOF; 没有出现在任何产生式体中的非终结符也是如此
+        follow[heads[0]].set(eof);
+
+        // 对 A -> α B β, FIRST(β) 属于 FOLLOW(B); β 可空时 FOLLOW(A) 也属于 FOLLOW(B)
+        var changed = true;
+        while (changed) {
+            changed = false;
+            for (int p = 0; p < productions.size(); p++) {
+                for (int d = 0; d < bodies[p].length; d++) {
+                    final var symbol = bodies[p][d];
+                    if (symbol < terminalCount) {
+                        continue;
+                    }
+                    final var target = follow[symbol - terminalCount];
+                    final var before = target.cardinality();
+                    target.or(firstAfterNext[itemBase[p] + d]);
+                    if (nullableAfterNext[itemBase[p] + d]) {
+                        target.or(follow[heads[p]]);
+                    }
+                    changed |= target.cardinality() != before;
+                }
+            }
+        }
+        for (final var set : follow) {
+            if (set.isEmpty()) {
+                set.set(eof);
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带向前看符号的 LR(1) 项目集族的构造, 供 {@link TableGenerator} 生成规范 LR(1) 与 LALR(1) 分析表
+ * <br>
+ * 项目与符号的编号见 {@link IndexedGrammar}, 向前看符号集合为以终结符编号为下标的 BitSet.
+ * 由于每个项目的 FIRST(β) 已预先算好, 求闭包时只需做 BitSet 的并.
+ * <br>
+ * 状态以核心项目 (按编号排序) 及其向前看符号表示. 规范 LR(1) 以核心项目与向前看符号共同区分状态;
+ * LALR(1) 只以核心项目区分, 遇到相同核心的状态时把向前看符号并入已有状态, 若有新增则重新处理该状态, 直到不再变化.
+ */
+final class LR1Builder {
+    /**
+     * 一个状态
+     */
+    static final class State {
+        private State(int index, int[] kernel, BitSet[] lookaheads) {
+            this.index = index;
+            this.kernel = kernel;
+            this.lookaheads = lookaheads;
+        }
+
+        final int index;
+        final int[] kernel;
+        final BitSet[] lookaheads;
+
+        // 以下由最近一次处理时填写: 闭包中的项目及其向前看符号, 以及按符号排列的转移
+        int[] closureItems = new int[0];
+        BitSet[] closureLookaheads = new BitSet[0];
+        int[] transitionSymbols = new int[0];
+        State[] transitionTargets = new State[0];
+
+        private boolean queued = false;
+    }
+
+    /**
+     * 状态的键: 规范 LR(1) 比较核心项目与向前看符号, LALR(1) 只比较核心项目
+     */
+    private record Key(int[] kernel, BitSet[] lookaheads) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key key
+                && Arrays.equals(kernel, key.kernel)
+                && Arrays.equals(lookaheads, key.lookaheads);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(kernel) * 31 + Arrays.hashCode(lookaheads);
+        }
+    }
+
+    /**
+     * @param grammar    编为整数的文法
+     * @param mergeCores 是否合并核心相同的状态, 即构造 LALR(1) 而非规范 LR(1)
+     */
+    LR1Builder(IndexedGrammar grammar, boolean mergeCores) {
+        this.grammar = grammar;
+        this.mergeCores = mergeCores;
+        this.terminalCount = grammar.terminalCount;
+        this.itemBase = grammar.itemBase;
+        this.itemSymbol = grammar.itemSymbol;
+        this.productionsOf = grammar.productionsOf;
+        this.firstAfterNext = grammar.firstAfterNext;
+        this.nullableAfterNext = grammar.nullableAfterNext;
+
+        final var itemCount = grammar.itemCount();
+        this.scratchLookaheads = new BitSet[itemCount];
+        this.scratchQueued = new boolean[itemCount];
+        this.scratchTouched = new int[itemCount];
+        this.scratchWork = new int[itemCount + 1];
+        this.scratchGroupFirst = new int[grammar.symbolCount];
+        this.scratchGroupSize = new int[grammar.symbolCount];
+        this.scratchGroupNext = new int[itemCount];
+    }
+
+    /**
+     * 构造项目集族
+     *
+     * @return 按编号排列的所有状态
+     */
+    List<State> build() {
+        final var init = new BitSet(terminalCount);
+        init.set(grammar.eof);
+        addState(new int[]{itemBase[0]}, new BitSet[]{init});
+
+        while (!queue.isEmpty()) {
+            final var state = queue.pollFirst();
+            state.queued = false;
+            process(state);
+        }
+
+        return states;
+    }
+
+    //==================== 以下为实现相关代码 ==============================//
+
+    private State addState(int[] kernel, BitSet[] lookaheads) {
+        final var key = new Key(kernel, mergeCores ? null : lookaheads);
+        final var existing = index.get(key);
+        if (existing == null) {
+            final var state = new State(states.size(), kernel, lookaheads);
+            states.add(state);
+            index.put(key, state);
+            enqueue(state);
+            return state;
+        }
+
+        if (mergeCores) {
+            var changed = false;
+            for (int i = 0; i < kernel.length; i++) {
+                final var target = existing.lookaheads[i];
+                final var before = target.cardinality();
+                target.or(lookaheads[i]);
+                changed |= target.cardinality() != before;
+            }
+            if (changed) {
+                enqueue(existing);
+            }
+        }
+        return existing;
+    }
+
+    private void enqueue(State state) {
+        if (!state.queued) {
+            state.queued = true;
+            queue.addLast(state);
+        }
+    }
+
+    /**
+     * 求状态的闭包, 再求出它在每个符号上的后继并加入项目集族
+     */
+    private void process(State state) {
+        final var lookaheads = scratchLookaheads;
+        final var queued = scratchQueued;
+        // 每个项目在闭包中只出现一次, 且在队列中时不会再入队, 因此闭包与循环队列中的项目都不会超过项目数
+        final var touched = scratchTouched;
+        final var work = scratchWork;
+        var size = 0;
+        var head = 0;
+        var tail = 0;
+        for (int i = 0; i < state.kernel.length; i++) {
+            final var item = state.kernel[i];
+            lookaheads[item] = (BitSet) state.lookaheads[i].clone();
+            touched[size++] = item;
+            queued[item] = true;
+            work[tail++] = item;
+        }
+
+        // 对 [A -> α . B β, L], 把 FIRST(β) (β 可空时再加上 L) 加入每个 [B -> . γ] 的向前看符号
+        while (head != tail) {
+            final var item = work[head];
+            head = head + 1 == work.length ? 0 : head + 1;
+            queued[item] = false;
+            final var symbol = itemSymbol[item];
+            if (symbol < terminalCount) {
+                continue;
+            }
+            for (final var p : productionsOf[symbol - terminalCount]) {
+                final var target = itemBase[p];
+                var set = lookaheads[target];
+                if (set == null) {
+                    set = new BitSet(terminalCount);
+                    lookaheads[target] = set;
+                    touched[size++] = target;
+                }
+                final var before = set.cardinality();
+                set.or(firstAfterNext[item]);
+                if (nullableAfterNext[item]) {
+                    set.or(lookaheads[item]);
+                }
+                if (set.cardinality() != before && !queued[target]) {
+                    queued[target] = true;
+                    work[tail] = target;
+                    tail = tail + 1 == work.length ? 0 : tail + 1;
+                }
+            }
+        }
+
+        state.closureItems = Arrays.copyOf(touched, size);
+        state.closureLookaheads = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            state.closureLookaheads[i] = lookaheads[touched[i]];
+        }
+
+        // 按点后的符号把闭包中的项目串成链表, 得到各后继的核心; 符号按首次出现的顺序排列
+        final var groupFirst = scratchGroupFirst;
+        final var groupSize = scratchGroupSize;
+        final var groupNext = scratchGroupNext;
+        final var symbols = new int[size];
+        var symbolCount = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            final var symbol = itemSymbol[touched[i]];
+            if (symbol < 0) {
+                continue;
+            }
+            if (groupSize[symbol] == 0) {
+                groupFirst[symbol] = -1;
+            }
+            groupNext[i] = groupFirst[symbol];
+            groupFirst[symbol] = i;
+            groupSize[symbol]++;
+        }
+        for (int i = 0; i < size; i++) {
+            final var symbol = itemSymbol[touched[i]];
+            if (symbol >= 0 && groupFirst[symbol] == i) {
+                symbols[symbolCount++] = symbol;
+            }
+        }
+
+        state.transitionSymbols = Arrays.copyOf(symbols, symbolCount);
+        state.transitionTargets = new State[symbolCount];
+        for (int s = 0; s < symbolCount; s++) {
+            final var symbol = symbols[s];
+            final var kernel = new int[groupSize[symbol]];
+            var count = 0;
+            for (int i = groupFirst[symbol]; i >= 0; i = groupNext[i]) {
+                kernel[count++] = touched[i];
+            }
+            Arrays.sort(kernel);
+            final var kernelLookaheads = new BitSet[kernel.length];
+            for (int i = 0; i < kernel.length; i++) {
+                kernelLookaheads[i] = (BitSet) lookaheads[kernel[i]].clone();
+                kernel[i]++;
+            }
+            groupSize[symbol] = 0;
+            state.transitionTargets[s] = addState(kernel, kernelLookaheads);
+        }
+
+        for (int i = 0; i < size; i++) {
+            lookaheads[touched[i]] = null;
+        }
+    }
+
+    private final IndexedGrammar grammar;
+    private final boolean mergeCores;
+
+    // 从 grammar 中取出的常用数组
+    private final int terminalCount;
+    private final int[] itemBase;
+    private final int[] itemSymbol;
+    private final int[][] productionsOf;
+    private final BitSet[] firstAfterNext;
+    private final boolean[] nullableAfterNext;
+
+    private final List<State> states = new ArrayList<>();
+    private final Map<Key, State> index = new HashMap<>();
+    private final ArrayDeque<State> queue = new ArrayDeque<>();
+
+    // 求闭包时以项目编号为下标的临时数组, 用完即清空
+    private final BitSet[] scratchLookaheads;
+    private final boolean[] scratchQueued;
+    private final int[] scratchTouched;
+    private final int[] scratchWork;
+    private final int[] scratchGroupFirst;
+    private final int[] scratchGroupSize;
+    private final int[] scratchGroupNext;
+}
@@ -5,6 +5,7 @@ import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -42,6 +43,67 @@ public class LRTable {
         return statusInIndexOrder.get(0);
     }
 
+    /**
+     * 在状态 status 上规约出 nonTerminal 后, 转移之前紧接着要做的单产生式规约 (见 {@link #shortcutUnitProductions()})
+     *
+     * @param status      规约后栈顶的状态
+     * @param nonTerminal 规约出的非终结符
+     * @return 按规约顺序排列的单产生式, 没有时为空表
+     */
+    public List<Production> getUnitChain(Status status, NonTerminal nonTerminal) {
+        return unitChains.getOrDefault(status, Map.of()).getOrDefault(nonTerminal, List.of());
+    }
+
+    /**
+     * @return 是否有 goto 途经被消去的单产生式规约
+     */
+    public boolean hasUnitChains() {
+        return !unitChains.isEmpty();
+    }
+
+    /**
+     * 消去只做单产生式 (形如 A -> B) 规约的状态, 把到达它们的 goto 直接接到规约之后的状态上, 途经的单产生式记在 goto 上
+     * (见 {@link #getUnitChain}). 状态会重新编号, 本表不变.
+     *
+     * @return 新的分析表; 没有可消去的状态时返回本表
+     */
+    public LRTable shortcutUnitProductions() {
+        return UnitProductionShortcut.apply(this);
+    }
+
+    /**
+     * 按访问计数重新编号状态并重排各列, 使常用的行与格子在编译后的稠密表中排在一起. 起始状态仍为 0 号, 本表不变.
+     *
+     * @param profile 在本表上记录的访问计数 (见 {@link TableProfile})
+     * @return 新的分析表
+     */
+    public LRTable renumberByProfile(TableProfile profile) {
+        return StateRenumbering.apply(this, profile);
+    }
+
+    /**
+     * @return 编译为稠密 int 矩阵的分析表, 第一次调用时构造, 之后复用
+     */
+    public CompiledLRTable compile() {
+        if (compiled == null) {
+            compiled = new CompiledLRTable(statusInIndexOrder, terminals, nonTerminals, unitChains, false);
+        }
+
+        return compiled;
+    }
+
+    /**
+     * @return 压缩形式的编译后分析表, 第一次调用时构造, 之后复用. 出错时可能比 {@link #compile()} 多做几次规约,
+     * 但在同一个词法单元上报告错误
+     */
+    public CompiledLRTable compileCompressed() {
+        if (compressed == null) {
+            compressed = new CompiledLRTable(statusInIndexOrder, terminals, nonTerminals, unitChains, true);
+        }
+
+        return compressed;
+    }
+
     public void dumpTable(String path) {
         final var text = new StringBuilder();
         // table head
@@ -61,28 +123,59 @@ public class LRTable {
                 .append(",")
                 .append(terminals.stream().map(status::getAction).map(Action::toString).collect(Collectors.joining(",")))
                 .append(",")
-                .append(nonTerminals.stream().map(status::getGoto).map(this::convertToGotoString).collect(Collectors.joining(",")))
+                .append(nonTerminals.stream().map(nonTerminal -> convertToGotoString(status, nonTerminal)).collect(Collectors.joining(",")))
                 .append("\n");
         }
 
         FileUtils.writeFile(path, text.toString());
     }
 
-    private String convertToGotoString(Status status) {
+    private String convertToGotoString(Status from, NonTerminal nonTerminal) {
+        final var status = from.getGoto(nonTerminal);
         if (status.equals(Status.error())) {
             return "";
-        } else {
+        }
+
+        // 途经的单产生式写在目标状态之后, 如 "5 (A -> B; E -> A)"; TableLoader 不能读回这样的表
+        final var chain = getUnitChain(from, nonTerminal);
+        if (chain.isEmpty()) {
             return status.toString();
+        } else {
+            return "%s (%s)".formatted(status, chain.stream().map(Production::toString).collect(Collectors.joining("; ")));
         }
     }
 
     LRTable(List<Status> statusInIndexOrder, List<TokenKind> terminals, List<NonTerminal> nonTerminals) {
+        this(statusInIndexOrder, terminals, nonTerminals, Map.of());
+    }
+
+    LRTable(List<Status> statusInIndexOrder, List<TokenKind> terminals, List<NonTerminal> nonTerminals,
+            Map<Status, Map<NonTerminal, List<Production>>> unitChains) {
         this.statusInIndexOrder = statusInIndexOrder;
         this.terminals = terminals;
         this.nonTerminals = nonTerminals;
+        this.unitChains = unitChains;
+    }
+
+    //==================== 供本包中的 TableCache 写出缓存 ==============================//
+
+    List<Status> statusInIndexOrder() {
+        return statusInIndexOrder;
+    }
+
+    List<TokenKind> terminals() {
+        return terminals;
+    }
+
+    List<NonTerminal> nonTerminals() {
+        return nonTerminals;
     }
 
     private final List<Status> statusInIndexOrder;
     private final List<TokenKind> terminals;
     private final List<NonTerminal> nonTerminals;
+    // 以状态与非终结符为键的单产生式链, 只有 shortcutUnitProductions 构造的表才有
+    private final Map<Status, Map<NonTerminal, List<Production>>> unitChains;
+    private CompiledLRTable compiled = null;
+    private CompiledLRTable compressed = null;
 }
@@ -0,0 +1,54 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把右递归的列表产生式改写为左递归
+ * <br>
+ * 对只有两条产生式 L -> α L 与 L -> α 的非终结符 L (α 非空且不含 L), 两种写法都产生 α+, 但右递归时 LR 分析器要把所有的 α
+ * 都留在栈上, 直到输入结束才能从后往前逐个规约出 L; 改为 L -> L α 后, 每读完一个 α (再看一个词法单元) 就规约一次,
+ * 栈的深度不随 α 的个数增长. 例如 S_list -> S Semicolon S_list 改为 S_list -> S_list S Semicolon 后,
+ * 每条语句在其分号之后就规约完毕, 驱动程序与观察者的栈都只与单条语句的嵌套深度有关.
+ * <br>
+ * 改写后的产生式保留原来的编号与头部, 体的长度也不变, 因此按编号分派的观察者不受影响; 但这些规约发生的时机与顺序变了,
+ * 对 S_list 的规约不再集中在输入末尾, 而是穿插在各语句之间, 规约列表 (如 ProductionCollector 的输出) 与串行分析右递归文法时不同.
+ * 观察者若按体中的位置读取 L -> α L 的属性, 还要注意 L 从体的末尾移到了开头.
+ */
+final class LeftRecursiveLists {
+    /**
+     * @param productions 按编号排列的产生式
+     * @return 改写后的产生式, 顺序与编号不变; 没有可改写的产生式时内容与 productions 相同
+     */
+    static List<Production> rewrite(List<Production> productions) {
+        final var result = new ArrayList<>(productions);
+        for (int i = 0; i < productions.size(); i++) {
+            final var production = productions.get(i);
+            final var head = production.head();
+            final var body = production.body();
+            if (body.size() < 2 || !body.get(body.size() - 1).equals(head)) {
+                continue;
+            }
+            final var element = body.subList(0, body.size() - 1);
+            if (element.contains(head)) {
+                continue;
+            }
+
+            // L 只能有 L -> α L 与 L -> α 两条产生式, 否则两种写法产生的语言不同
+            final var alternatives = productions.stream().filter(other -> other.head().equals(head)).toList();
+            final var hasBase = alternatives.stream().anyMatch(other -> other.body().equals(element));
+            if (alternatives.size() != 2 || !hasBase) {
+                continue;
+            }
+
+            final var leftRecursive = new ArrayList<Term>(body.size());
+            leftRecursive.add(head);
+            leftRecursive.addAll(element);
+            result.set(i, new Production(production.index(), head, List.copyOf(leftRecursive)));
+        }
+        return result;
+    }
+
+    private LeftRecursiveLists() {
+    }
+}
@@ -0,0 +1,26 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+/**
+ * 终结符或产生式的优先级与结合性, 由 grammar.txt 中的 %left, %right, %nonassoc 声明
+ * <br>
+ * 与 yacc 相同, 越靠后声明的优先级越高; 产生式的优先级为其体中最右边一个有优先级的终结符的优先级.
+ *
+ * @param level         优先级, 从 1 开始, 越大越优先
+ * @param associativity 结合性
+ */
+public record Precedence(int level, Associativity associativity) {
+    public enum Associativity {LEFT, RIGHT, NONASSOC}
+
+    /**
+     * @param keyword 声明的关键字, 如 %left
+     * @return 对应的结合性
+     */
+    static Associativity associativityOf(String keyword) {
+        return switch (keyword) {
+            case "%left" -> Associativity.LEFT;
+            case "%right" -> Associativity.RIGHT;
+            case "%nonassoc" -> Associativity.NONASSOC;
+            default -> throw new RuntimeException("Unknown precedence declaration: " + keyword);
+        };
+    }
+}
@@ -0,0 +1,96 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按访问计数重新排列 LR 分析表的状态与列 (profile-guided layout)
+ * <br>
+ * 状态按 BFS 顺序 (或外部 CSV 中的顺序) 编号, 分析常见输入时反复访问的状态散落在整张表中.
+ * 本类按 {@link TableProfile} 中的计数把状态从热到冷重新编号, 编译后的稠密表中热的行就排在一起;
+ * 同一行中的列也按热度排列: 终结符列按各自被访问的次数, 非终结符列按以其为头部的产生式被规约的次数 (即该列 goto 被查的次数).
+ * <br>
+ * 起始状态仍为 0 号状态; 计数相同 (包括从未访问) 的状态与列保持原来的相对顺序. 分析表的动作与 goto 不变, 只是换了编号与列序,
+ * 因此分析结果与观察者收到的回调 (除状态编号外) 都不变.
+ */
+final class StateRenumbering {
+    /**
+     * @param table   分析表
+     * @param profile 为该分析表记录的访问计数
+     * @return 重新编号后的分析表
+     */
+    static LRTable apply(LRTable table, TableProfile profile) {
+        if (!profile.isFor(table)) {
+            throw new RuntimeException("Profile was not recorded for this table");
+        }
+
+        final var statuses = table.statusInIndexOrder();
+        final var order = new ArrayList<>(statuses.subList(1, statuses.size()));
+        // List.sort 是稳定的, 计数相同的状态保持原来的顺序
+        order.sort(Comparator.comparingLong((Status status) -> profile.hits(status)).reversed());
+        order.add(0, statuses.get(0));
+
+        final var terminalHits = new HashMap<Term, Long>();
+        final var nonTerminalHits = new HashMap<Term, Long>();
+        for (final var status : statuses) {
+            for (final var terminal : table.terminals()) {
+                final var hits = profile.hits(status, terminal);
+                terminalHits.merge(terminal, hits, Long::sum);
+                final var action = status.getAction(terminal);
+                if (action.getKind() == Action.ActionKind.Reduce) {
+                    nonTerminalHits.merge(action.getProduction().head(), hits, Long::sum);
+                }
+            }
+        }
+        final var terminals = sortedByHits(table.terminals(), terminalHits);
+        final var nonTerminals = sortedByHits(table.nonTerminals(), nonTerminalHits);
+
+        final var renumbered = new HashMap<Status, Status>();
+        for (final var old : order) {
+            renumbered.put(old, Status.create(renumbered.size()));
+        }
+
+        final var statusInIndexOrder = new ArrayList<Status>(order.size());
+        final var unitChains = new HashMap<Status, Map<NonTerminal, List<Production>>>();
+        for (final var old : order) {
+            final var status = renumbered.get(old);
+            statusInIndexOrder.add(status);
+
+            for (final var terminal : terminals) {
+                final var action = old.getAction(terminal);
+                switch (action.getKind()) {
+                    case Shift -> status.setAction(terminal, Action.shift(renumbered.get(action.getStatus())));
+                    case Reduce, Accept -> status.setAction(terminal, action);
+                    case Error -> {
+                    }
+                }
+            }
+
+            for (final var nonTerminal : nonTerminals) {
+                final var target = old.getGoto(nonTerminal);
+                if (target.isError()) {
+                    continue;
+                }
+                status.setGoto(nonTerminal, renumbered.get(target));
+                final var chain = table.getUnitChain(old, nonTerminal);
+                if (!chain.isEmpty()) {
+                    unitChains.computeIfAbsent(status, key -> new HashMap<>()).put(nonTerminal, chain);
+                }
+            }
+        }
+
+        return new LRTable(statusInIndexOrder, terminals, nonTerminals, unitChains);
+    }
+
+    private static <T extends Term> List<T> sortedByHits(List<T> terms, Map<Term, Long> hits) {
+        final var sorted = new ArrayList<>(terms);
+        sorted.sort(Comparator.comparingLong((T term) -> hits.getOrDefault(term, 0L)).reversed());
+        return sorted;
+    }
+
+    private StateRenumbering() {
+    }
+}
@@ -0,0 +1,308 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * LR 分析表与文法的二进制缓存
+ * <br>
+ * {@link TableLoader} 每次都要切分 CSV, 并通过 {@link GrammarInfo} 读取与切分 grammar.txt 后按产生式原文查找规约动作.
+ * 本类第一次读取分析表后把状态, 动作, goto 与产生式写入一个二进制文件; 之后只要 grammar.txt, coding_map.csv 与分析表的内容不变,
+ * 就直接读取该文件, 校验后构造出相同的 {@link LRTable}, 并以其中的产生式初始化 GrammarInfo, 不再解析任何文本.
+ * 缓存只有几 KB, 内存映射的建立开销 (首次使用时还要加载相应的类) 比一次读入更大, 因此整个读入堆内的 ByteBuffer.
+ * <br>
+ * 缓存的键为三个文件各自的长度与 CRC32C. 文件格式 (大端序):
+ * <ul>
+ *     <li>魔数 "LRTC", 版本号, 三个文件的长度与 CRC32C</li>
+ *     <li>产生式数, 每条产生式的原文, 头部名字, 体的长度与各符号名字</li>
+ *     <li>优先级声明数与各声明的原文</li>
+ *     <li>终结符与非终结符的名字, 按分析表的列顺序</li>
+ *     <li>状态数, 各状态编号, 以及每个状态各列的动作 (编码同 {@link CompiledLRTable}, 移入时载荷为状态编号) 与 goto (无转移时为 -1)</li>
+ * </ul>
+ * 字符串为长度加 UTF-8 字节. 缓存缺失, 损坏或过期时退回到 {@link TableLoader} 并重写缓存; 写缓存失败不影响结果.
+ */
+public final class TableCache {
+    private static final int MAGIC = 0x4C525443;
+    private static final int VERSION = 2;
+
+    /**
+     * 读取分析表, 缓存有效时直接使用缓存
+     *
+     * @param tablePath CSV 格式的分析表路径
+     * @param cachePath 缓存文件路径
+     * @return LRTable
+     */
+    public static LRTable load(String tablePath, String cachePath) {
+        final var key = contentKey(FilePathConfig.GRAMMAR_PATH, FilePathConfig.CODING_MAP_PATH, tablePath);
+        final var cached = read(cachePath, key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final var table = new TableLoader().load(tablePath);
+        write(cachePath, key, table);
+        return table;
+    }
+
+    /**
+     * @return 各文件的长度与 CRC32C, 依次排列
+     */
+    private static long[] contentKey(String... paths) {
+        final var key = new long[paths.length * 2];
+        for (int i = 0; i < paths.length; i++) {
+            try {
+                final var bytes = Files.readAllBytes(Paths.get(paths[i]));
+                final var crc = new CRC32C();
+                crc.update(bytes);
+                key[i * 2] = bytes.length;
+                key[i * 2 + 1] = crc.getValue();
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception on " + paths[i], e);
+            }
+        }
+        return key;
+    }
+
+    //==================== 读取 ==============================//
+
+    /**
+     * @return 缓存中的分析表; 缓存缺失, 损坏或与 key 不符时返回 null
+     */
+    private static LRTable read(String cachePath, long[] key) {
+        final var path = Paths.get(cachePath);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        try {
+            final var buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            for (final var expected : key) {
+                if (buffer.getLong() != expected) {
+                    return null;
+                }
+            }
+            return decode(buffer);
+        } catch (IOException | RuntimeException e) {
+            // 缓存损坏 (越界, 未知的符号或状态等) 时当作缓存不存在
+            return null;
+        }
+    }
+
+    private static LRTable decode(ByteBuffer buffer) {
+        // 先读出全部内容并检查引用, 确认无误后才初始化 GrammarInfo, 以免损坏的缓存留下错误的文法
+        final var productionCount = readCount(buffer);
+        final var texts = new ArrayList<String>(productionCount);
+        final var heads = new ArrayList<String>(productionCount);
+        final var bodies = new ArrayList<List<String>>(productionCount);
+        for (int i = 0; i < productionCount; i++) {
+            texts.add(readString(buffer));
+            heads.add(readString(buffer));
+            final var bodyLength = readCount(buffer);
+            final var body = new ArrayList<String>(bodyLength);
+            for (int j = 0; j < bodyLength; j++) {
+                body.add(readString(buffer));
+            }
+            bodies.add(body);
+        }
+        final var declarationCount = readCount(buffer);
+        final var declarations = new ArrayList<String>(declarationCount);
+        for (int i = 0; i < declarationCount; i++) {
+            declarations.add(readString(buffer));
+        }
+
+        final var terminals = new ArrayList<TokenKind>();
+        for (int i = readCount(buffer); i > 0; i--) {
+            terminals.add(TokenKind.fromString(readString(buffer)));
+        }
+        final var nonTerminals = new ArrayList<NonTerminal>();
+        for (int i = readCount(buffer); i > 0; i--) {
+            nonTerminals.add(new NonTerminal(readString(buffer)));
+        }
+
+        final var stateCount = readCount(buffer);
+        final var statusInIndexOrder = new ArrayList<Status>(stateCount);
+        final var statuses = new HashMap<Integer, Status>();
+        for (int i = 0; i < stateCount; i++) {
+            final var status = Status.create(buffer.getInt());
+            statusInIndexOrder.add(status);
+            statuses.put(status.index(), status);
+        }
+        final var actions = new int[stateCount * terminals.size()];
+        final var gotos = new int[stateCount * nonTerminals.size()];
+        for (int i = 0; i < stateCount; i++) {
+            for (int j = 0; j < terminals.size(); j++) {
+                final var action = buffer.getInt();
+                final var payload = CompiledLRTable.payloadOf(action);
+                final var kind = CompiledLRTable.kindOf(action);
+                if (kind == CompiledLRTable.SHIFT && !statuses.containsKey(payload)
+                        || kind == CompiledLRTable.REDUCE && (payload < 1 || payload > productionCount)) {
+                    return null;
+                }
+                actions[i * terminals.size() + j] = action;
+            }
+            for (int j = 0; j < nonTerminals.size(); j++) {
+                final var target = buffer.getInt();
+                if (target >= 0 && !statuses.containsKey(target)) {
+                    return null;
+                }
+                gotos[i * nonTerminals.size() + j] = target;
+            }
+        }
+        if (buffer.hasRemaining()) {
+            return null;
+        }
+
+        // 产生式编号即行号, 从 1 开始
+        final var productions = GrammarInfo.installIfAbsent(texts, heads, bodies, declarations);
+        for (int i = 0; i < stateCount; i++) {
+            final var status = statusInIndexOrder.get(i);
+            for (int j = 0; j < terminals.size(); j++) {
+                status.setAction(terminals.get(j), decodeAction(actions[i * terminals.size() + j], statuses, productions));
+            }
+            for (int j = 0; j < nonTerminals.size(); j++) {
+                final var target = gotos[i * nonTerminals.size() + j];
+                status.setGoto(nonTerminals.get(j), target < 0 ? Status.error() : statuses.get(target));
+            }
+        }
+
+        return new LRTable(statusInIndexOrder, terminals, nonTerminals);
+    }
+
+    private static Action decodeAction(int action, HashMap<Integer, Status> statuses, List<Production> productions) {
+        final var payload = CompiledLRTable.payloadOf(action);
+        return switch (CompiledLRTable.kindOf(action)) {
+            case CompiledLRTable.SHIFT -> Action.shift(statuses.get(payload));
+            case CompiledLRTable.REDUCE -> Action.reduce(productions.get(payload - 1));
+            case CompiledLRTable.ACCEPT -> Action.accept();
+            default -> Action.error();
+        };
+    }
+
+    /**
+     * 读取元素个数或长度. 每个元素至少占一个字节, 超出剩余字节数的值说明缓存已损坏, 不能照此分配内存
+     */
+    private static int readCount(ByteBuffer buffer) {
+        final var count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) {
+            throw new RuntimeException("Corrupted table cache");
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final var bytes = new byte[readCount(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //==================== 写出 ==============================//
+
+    private static void write(String cachePath, long[] key, LRTable table) {
+        final var bytes = new ByteArrayOutputStream();
+        try (final var out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (final var value : key) {
+                out.writeLong(value);
+            }
+
+            final var productions = GrammarInfo.getProductionsInOrder();
+            final var texts = new HashMap<Production, String>();
+            GrammarInfo.getProductions().forEach((text, production) -> texts.put(production, text));
+            out.writeInt(productions.size());
+            for (final var production : productions) {
+                writeString(out, texts.get(production));
+                writeString(out, production.head().getTermName());
+                out.writeInt(production.body().size());
+                for (final var term : production.body()) {
+                    writeString(out, term.getTermName());
+                }
+            }
+            final var declarations = GrammarInfo.getPrecedenceDeclarations();
+            out.writeInt(declarations.size());
+            for (final var declaration : declarations) {
+                writeString(out, declaration);
+            }
+
+            out.writeInt(table.terminals().size());
+            for (final var terminal : table.terminals()) {
+                writeString(out, terminal.getTermName());
+            }
+            out.writeInt(table.nonTerminals().size());
+            for (final var nonTerminal : table.nonTerminals()) {
+                writeString(out, nonTerminal.getTermName());
+            }
+
+            out.writeInt(table.statusInIndexOrder().size());
+            for (final var status : table.statusInIndexOrder()) {
+                out.writeInt(status.index());
+            }
+            for (final var status : table.statusInIndexOrder()) {
+                for (final var terminal : table.terminals()) {
+                    out.writeInt(encodeAction(status.getAction(terminal)));
+                }
+                for (final var nonTerminal : table.nonTerminals()) {
+                    final var target = status.getGoto(nonTerminal);
+                    out.writeInt(target.isError() ? -1 : target.index());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode table cache", e);
+        }
+
+        // 先写临时文件再替换, 避免并发启动的进程读到写了一半的缓存
+        final var path = Paths.get(cachePath);
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            final var temp = path.resolveSibling(path.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+            Files.write(temp, bytes.toByteArray());
+            moveReplacing(temp, path);
+        } catch (IOException e) {
+            // 缓存只用于加速启动, 写不出来时下次照常读取 CSV
+        }
+    }
+
+    private static void moveReplacing(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(from);
+            throw e;
+        }
+    }
+
+    private static int encodeAction(Action action) {
+        return switch (action.getKind()) {
+            case Shift -> (action.getStatus().index() << 2) | CompiledLRTable.SHIFT;
+            case Reduce -> (action.getProduction().index() << 2) | CompiledLRTable.REDUCE;
+            case Accept -> CompiledLRTable.ACCEPT;
+            case Error -> CompiledLRTable.ERROR;
+        };
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        final var bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private TableCache() {
+    }
+}
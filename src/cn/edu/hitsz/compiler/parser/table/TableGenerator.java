@@ -4,16 +4,45 @@ import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 /**
  * 根据语法文件构造 LR 分析表.
  * <br>
  * 此文件为非必需的框架文件, 用于提升整个编译器处理流程的统一性以及为学生提供 SLR(1) 分析表生成程序的参考. 正常情况下你不需要了解该文件.
+ * <br>
+ * 默认构造 SLR(1) 分析表; 也可以通过 {@link Mode} 选择 LALR(1) 或规范 LR(1), 它们的项目集族由 {@link LR1Builder} 构造.
+ * <br>
+ * 文法先编为整数 (见 {@link IndexedGrammar}): 项目是 int, 项目集与 FIRST/FOLLOW 集是 BitSet, 产生式按头部分组.
+ * 每个非终结符展开出的项目只求一次, 各状态在每个符号上的转移在构造项目集族时记下, 填表时直接使用.
+ * 较大的文法按 BFS 的层并行展开 SLR(1) 的项目集族, 状态编号仍与逐个展开时相同.
  */
 public class TableGenerator {
+    /**
+     * 分析表的种类
+     */
+    public enum Mode {
+        /**
+         * LR(0) 项目集族, 以 FOLLOW 集决定规约
+         */
+        SLR,
+        /**
+         * 合并核心相同的 LR(1) 状态, 状态数与 SLR(1) 相同
+         */
+        LALR,
+        /**
+         * 规范 LR(1), 状态数可能远多于前两者
+         */
+        LR1,
+    }
+
     public TableGenerator() {
+        this(Mode.SLR);
+    }
+
+    public TableGenerator(Mode mode) {
+        this.mode = mode;
         this.productions = GrammarInfo.getProductionsInOrder();
         this.terminals = new HashSet<>(TokenKind.allAllowedTokenKinds().values());
         this.nonTerminals = new HashSet<>(GrammarInfo.getNonTerminals().values());
@@ -27,384 +56,427 @@ public class TableGenerator {
      * 主体方法
      */
     public void run() {
-        calcFirst();
-        calcFollow();
+        if (leftRecursiveLists) {
+            productions = LeftRecursiveLists.rewrite(productions);
+        }
+        // 固定终结符与非终结符的顺序, 使项目集族中的编号与 getTable 的列顺序一致
+        grammar = new IndexedGrammar(productions, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
+        if (mode != Mode.SLR) {
+            runWithLookaheads();
+            return;
+        }
+
+        // FIRST 与 FOLLOW 集已在 IndexedGrammar 中求出
         constructDFA();
         dumpItems();
         genTable();
     }
 
     /**
-     * 将该分析表生成的 LR(0) 规范集族打印到某个文件之中, 用于调试
+     * 将该分析表生成的规范集族打印到某个文件之中, 用于调试
      */
     public void dumpItems() {
         final var lines = new ArrayList<String>();
         for (final var status : allStatusInIndexOrder) {
             lines.add("%d: ".formatted(status.index()));
-            for (final var item : including.get(status)) {
-                lines.add("    " + item);
+            if (lookaheadStates != null) {
+                final var state = lookaheadStates.get(status.index());
+                for (int i = 0; i < state.closureItems.length; i++) {
+                    lines.add("    " + grammar.itemToString(state.closureItems[i], state.closureLookaheads[i]));
+                }
+                continue;
+            }
+            final var items = including.get(status.index());
+            for (int item = items.nextSetBit(0); item >= 0; item = items.nextSetBit(item + 1)) {
+                lines.add("    " + grammar.itemToString(item));
             }
         }
 
         FileUtils.writeLines("data/out/items.txt", lines);
     }
 
+    /**
+     * 设置 getTable 是否返回消去了单产生式规约的分析表, 见 {@link LRTable#shortcutUnitProductions()}
+     *
+     * @param shortcut 是否消去
+     */
+    public void setShortcutUnitProductions(boolean shortcut) {
+        this.shortcutUnitProductions = shortcut;
+    }
+
+    /**
+     * 设置是否把右递归的列表产生式 (如 S_list -> S Semicolon S_list) 改写为左递归后再构造分析表, 须在 {@link #run()} 之前调用
+     * <br>
+     * 改写后每条语句在分号之后就规约完毕, 分析栈的深度不随语句数增长; 产生式编号不变, 但规约的顺序不同. 见 {@link LeftRecursiveLists}.
+     *
+     * @param leftRecursive 是否改写
+     */
+    public void setLeftRecursiveLists(boolean leftRecursive) {
+        this.leftRecursiveLists = leftRecursive;
+    }
+
+    /**
+     * 设置 getTable 按哪个访问计数文件重新编号状态, 见 {@link LRTable#renumberByProfile(TableProfile)}
+     * <br>
+     * 计数须在 getTable 未重新编号时返回的表 (按 setShortcutUnitProductions 消去后) 上记录; 文件不存在或与该表不符时不重新编号.
+     *
+     * @param path 访问计数文件路径, 为 null 时不重新编号
+     */
+    public void setProfilePath(String path) {
+        this.profilePath = path;
+    }
+
     /**
      * @return 构造出的 LR 表
      */
     public LRTable getTable() {
-        return new LRTable(allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
+        final var built = new LRTable(allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
+        final var table = shortcutUnitProductions ? built.shortcutUnitProductions() : built;
+        if (profilePath == null) {
+            return table;
+        }
+        return TableProfile.load(profilePath, table).map(table::renumberByProfile).orElse(table);
     }
 
-    private final List<Production> productions;
+    private final Mode mode;
+    private boolean shortcutUnitProductions = false;
+    private String profilePath = null;
+    private boolean leftRecursiveLists = false;
+    // 按 setLeftRecursiveLists 改写后的产生式, 编号与 GrammarInfo 中的相同
+    private List<Production> productions;
     private final Set<TokenKind> terminals;
     private final Set<NonTerminal> nonTerminals;
+    private IndexedGrammar grammar = null;
 
-    private final Map<Term, Set<TokenKind>> first = new HashMap<>();
-    private final Map<Term, Set<TokenKind>> follow = new HashMap<>();
-
-    private final Set<Term> visited = new HashSet<>();
+    /**
+     * 各状态的项目集 (以项目编号为下标的 BitSet), 相当于理论课中的 I_i
+     */
+    private final List<BitSet> including = new ArrayList<>();
+    /**
+     * 各状态在每个符号上的后继状态编号 (以符号编号为下标), 无转移时为 -1, 相当于 GO(I_i, X)
+     */
+    private final List<int[]> transitions = new ArrayList<>();
+    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+    /**
+     * 各状态中按优先级消解过移入-规约冲突的格子, 以及参与消解的产生式, 用于发现之后的规约-规约冲突
+     */
+    private final Map<Status, Map<TokenKind, Production>> resolvedByPrecedence = new HashMap<>();
 
     /**
-     * 计算所有符号的 first 集合 <br>
-     * 终结符的 first 就是它自身, 非终结符的 first 则递归计算
+     * 以非终结符下标为索引, 从该非终结符出发反复展开得到的点在开头的项目, 即 CLOSURE({A -> α . B β}) 中除核心外的部分.
+     * 按需求出并缓存
      */
-    private void calcFirst() {
-        for (final var terminal : terminals) {
-            first.put(terminal, Set.of(terminal));
-        }
+    private BitSet[] expansions = null;
 
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFirst(nonTerminal);
-        }
+    /**
+     * 一层中的状态数不少于该值时才并行展开, 否则任务划分的开销比展开本身还大
+     */
+    private static final int PARALLEL_THRESHOLD = 64;
 
+    /**
+     * 一个状态的所有后继: 按非终结符在前, 终结符在后的顺序排列的符号及对应的后继项目集
+     */
+    private record Successors(int[] symbols, BitSet[] closures) {
     }
 
     /**
-     * 递归计算特定非终结符的 first
-     *
-     * @param nonTerminal 非终结符
-     * @return 其 first 集合
+     * 以核为键的闭包, 同一个核在不同状态中出现时只求一次闭包. 并行展开时由多个线程同时访问
+     */
+    private final Map<BitSet, BitSet> closureOfKernel = new ConcurrentHashMap<>();
+
+    /**
+     * 构造出所有状态并维护状态与项集之间的对应关系
+     * <br>
+     * 与理论课中的 LR(0) 规范项目集族算法相同, 以 BFS 的顺序编号. 展开按层进行: 同一层的状态互不依赖,
+     * 较宽的层在公共 ForkJoinPool 上并行求出各状态的后继项目集; 之后再按状态编号与符号的顺序依次查找或创建状态,
+     * 因此编号与逐个展开时完全相同, 不受线程调度影响.
      */
-    private Set<TokenKind> calcFirst(Term nonTerminal) {
-        // 如果已经被计算, 则直接返回缓存的结果
-        if (first.containsKey(nonTerminal)) {
-            return first.get(nonTerminal);
+    private void constructDFA() {
+        final var symbolCount = grammar.symbolCount;
+        // 并行展开前先求出所有展开, 使 expansionOf 在各线程中只读
+        expansions = new BitSet[grammar.nonTerminals.size()];
+        for (int nonTerminal = 0; nonTerminal < expansions.length; nonTerminal++) {
+            expansionOf(nonTerminal);
         }
 
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            if (nonTerminal == production.head()) {
-                // 在文法中寻找以该非终结符为头的产生式
-                final var firstSymbol = production.body().get(0);
-                // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
-                if (!visited.contains(firstSymbol)) {
-                    // 随后递归查找该产生式体的第一个文法符号的 first 集合
-                    // 它的 first 集合也是该非终结符的 first 集合
-                    visited.add(firstSymbol);
-                    result.addAll(calcFirst(firstSymbol));
+        final var belongTo = new HashMap<BitSet, Integer>();
+        final var initKernel = new BitSet(grammar.itemCount());
+        initKernel.set(grammar.itemBase[0]);
+        final var initClosure = constructClosure(initKernel);
+        belongTo.put(initClosure, 0);
+        including.add(initClosure);
+
+        var levelStart = 0;
+        while (levelStart < including.size()) {
+            final var levelEnd = including.size();
+            final var level = IntStream.range(levelStart, levelEnd);
+            final var successors = (levelEnd - levelStart >= PARALLEL_THRESHOLD ? level.parallel() : level)
+                .mapToObj(idx -> constructSuccessors(including.get(idx)))
+                .toList();
+
+            for (final var successor : successors) {
+                final var row = new int[symbolCount];
+                Arrays.fill(row, -1);
+                for (int i = 0; i < successor.symbols().length; i++) {
+                    row[successor.symbols()[i]] = belongTo.computeIfAbsent(successor.closures()[i], key -> {
+                        including.add(key);
+                        return including.size() - 1;
+                    });
                 }
+                transitions.add(row);
             }
+            levelStart = levelEnd;
         }
 
-        first.put(nonTerminal, result);
-        return result;
-    }
-
+        closureOfKernel.clear();
 
-    /**
-     * 计算所有非终结符的 follow 集合
-     */
-    private void calcFollow() {
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFollow(nonTerminal);
+        for (int idx = 0; idx < including.size(); idx++) {
+            allStatusInIndexOrder.add(Status.create(idx));
         }
-
-        // 对于找完所有产生式了都还没没有 follow 的非终结符
-        // 它必然是一个没有被使用的非终结符, 这意味着它的 follow 就是 EOF
-        nonTerminals.stream()
-            .map(follow::get).filter(Set::isEmpty)
-            .forEach(set -> set.add(TokenKind.eof()));
     }
 
     /**
-     * 递归计算给定非终结符的 follow 集合
+     * 求出项集 I 关于每个文法符号 X 的 GO(I, X)
+     * <br>
+     * 先按点后的符号把项目的后继项分组得到各后继项目集的核, 再分别求闭包. 不修改任何共享状态, 可以并行调用.
      *
-     * @param nonTerminal 给定的非终止符
-     * @return 其 follow 集合
+     * @param items 项集 I
+     * @return I 的所有非空后继项目集
      */
-    private Set<TokenKind> calcFollow(NonTerminal nonTerminal) {
-        // 与 first 类似, 先查找缓存
-        if (follow.containsKey(nonTerminal)) {
-            return follow.get(nonTerminal);
-        }
-
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            final var body = production.body();
-
-            // 对该非终结符在每条产生式体中的可能出现, 我们都要将紧跟在该出现后面的项的 first 加入其 follow 集合
-            // 我们直接枚举每条产生式体的每个项
-            for (int i = 0; i < body.size() - 1; i++) {
-                // 如果发现目前的 curr 的话, 后面跟着的符号的 first 就是它的 follow
-                final var symbol = body.get(i);
-                final var next = body.get(i + 1);
-
-                if (symbol.equals(nonTerminal)) {
-                    result.addAll(first.get(next));
+    private Successors constructSuccessors(BitSet items) {
+        final var symbolCount = grammar.symbolCount;
+        final var itemSymbol = grammar.itemSymbol;
+        final var kernels = new BitSet[symbolCount];
+        var count = 0;
+        for (int item = items.nextSetBit(0); item >= 0; item = items.nextSetBit(item + 1)) {
+            final var symbol = itemSymbol[item];
+            if (symbol >= 0) {
+                if (kernels[symbol] == null) {
+                    kernels[symbol] = new BitSet(grammar.itemCount());
+                    count++;
                 }
+                kernels[symbol].set(item + 1);
             }
+        }
 
-            // 如果该非终结符出现在产生式的末尾, 那么该产生式的头的 follow 集合也要加入其 follow 集合中
-            final var lastInBody = body.get(body.size() - 1);
-            if (lastInBody.equals(nonTerminal)) {
-                final var head = production.head();
-                if (visited.contains(head)) {
-                    // 如果该产生式头已经在栈中了, 那么意味着这个非终结符有可能一直展开自己
-                    // 这时候 EOF 也可能是它的 Follow
-                    result.add(TokenKind.eof());
-                } else {
-                    // 否则直接递归查找
-                    visited.add(head);
-                    result.addAll(calcFollow(head));
-                }
+        final var symbols = new int[count];
+        final var closures = new BitSet[count];
+        var i = 0;
+        for (int rank = 0; rank < symbolCount; rank++) {
+            // 非终结符在前, 终结符在后
+            final var symbol = (rank + grammar.terminalCount) % symbolCount;
+            if (kernels[symbol] != null) {
+                symbols[i] = symbol;
+                closures[i] = closureOfKernel.computeIfAbsent(kernels[symbol], this::constructClosure);
+                i++;
             }
         }
-
-        follow.put(nonTerminal, result);
-        return result;
+        return new Successors(symbols, closures);
     }
 
     /**
-     * 表示一个项目
-     * <br>
-     * 对于 A -> B . C, 其 production 为 A -> B C, dot 为 1 (其下一个项 C 的索引) <br>
-     * 对于 A -> B C ., 其 production 为 A -> B C, dot 为 2 (其产生式体的项数量) <br>
+     * 构造项集 {@code kernel} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
      *
-     * @param production 产生式
-     * @param dot        目前解析到的位置
+     * @param kernel 项集 I
+     * @return 闭包
      */
-    private record Item(Production production, int dot) {
-        /**
-         * @return 点的位置是否在产生式的末尾
-         */
-        public boolean isDotAtEnd() {
-            return production.body().size() == dot;
-        }
-
-        /**
-         * @return 获得点后面的文法符号; 若点的位置在末尾则返回空
-         */
-        public Optional<Term> getAfterDot() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(production.body().get(dot));
+    private BitSet constructClosure(BitSet kernel) {
+        final var itemSymbol = grammar.itemSymbol;
+        final var terminalCount = grammar.terminalCount;
+        final var result = (BitSet) kernel.clone();
+        for (int item = kernel.nextSetBit(0); item >= 0; item = kernel.nextSetBit(item + 1)) {
+            final var symbol = itemSymbol[item];
+            if (symbol >= terminalCount) {
+                result.or(expansionOf(symbol - terminalCount));
             }
         }
+        return result;
+    }
 
-        /**
-         * @return 获得当前项目的后继项; 若点的位置在末尾则返回空
-         */
-        public Optional<Item> getNextItem() {
-            if (isDotAtEnd()) {
-                return Optional.empty();
-            } else {
-                return Optional.of(new Item(production, dot + 1));
-            }
+    /**
+     * @param nonTerminal 非终结符下标
+     * @return 所有由该非终结符反复展开得到的点在开头的项目
+     */
+    private BitSet expansionOf(int nonTerminal) {
+        if (expansions[nonTerminal] != null) {
+            return expansions[nonTerminal];
         }
 
-        @Override
-        public String toString() {
-            final var builder = new StringBuilder();
-
-            builder.append(production.head());
-            builder.append(" -> ");
-
-            final var body = production.body();
-            for (int i = 0; i < body.size(); i++) {
-                if (i == dot) {
-                    builder.append(" .");
+        // 以 BFS 的方法展开, 每个非终结符只展开一次
+        final var terminalCount = grammar.terminalCount;
+        final var result = new BitSet(grammar.itemCount());
+        final var visited = new boolean[grammar.nonTerminals.size()];
+        final var unexpanded = new ArrayDeque<Integer>();
+        visited[nonTerminal] = true;
+        unexpanded.add(nonTerminal);
+        while (!unexpanded.isEmpty()) {
+            final int top = unexpanded.pollFirst();
+            for (final var p : grammar.productionsOf[top]) {
+                final var item = grammar.itemBase[p];
+                result.set(item);
+                final var symbol = grammar.itemSymbol[item];
+                if (symbol >= terminalCount && !visited[symbol - terminalCount]) {
+                    visited[symbol - terminalCount] = true;
+                    unexpanded.addLast(symbol - terminalCount);
                 }
-                builder.append(" ").append(body.get(i));
-            }
-
-            if (dot == body.size()) {
-                builder.append(" .");
             }
-
-            return builder.toString();
         }
-    }
 
-    private final Map<Set<Item>, Status> belongTo = new HashMap<>();
-    private final Map<Status, Set<Item>> including = new HashMap<>();
-    private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+        expansions[nonTerminal] = result;
+        return result;
+    }
 
     /**
-     * 构造出所有状态并维护状态与项集之间的对应关系
+     * 构造 LR 分析表 (填充各个 status 中的 action 与 goto)
      */
-    private void constructDFA() {
-        final var argumentProduction = productions.get(0);
-        final var initItem = new Item(argumentProduction, 0);
-        final var collections = constructCanonicalLRCollection(initItem);
+    private void genTable() {
+        final var terminalCount = grammar.terminalCount;
+        // 依索引顺序对每个状态
+        for (final var status : allStatusInIndexOrder) {
+            // A -> alpha . a beta 与 A -> alpha . B beta
+            // 在终结符上移入, 在非终结符上转移到 GO(I, B) 对应的状态, 转移在构造项目集族时已求出
+            final var row = transitions.get(status.index());
+            for (int symbol = 0; symbol < row.length; symbol++) {
+                if (row[symbol] < 0) {
+                    continue;
+                }
+                final var next = allStatusInIndexOrder.get(row[symbol]);
+                if (symbol < terminalCount) {
+                    status.setAction(grammar.terminals.get(symbol), Action.shift(next));
+                } else {
+                    status.setGoto(grammar.nonTerminals.get(symbol - terminalCount), next);
+                }
+            }
 
-        for (int idx = 0; idx < collections.size(); idx++) {
-            final var status = Status.create(idx);
-            allStatusInIndexOrder.add(status);
+            final var items = including.get(status.index());
+            for (int item = items.nextSetBit(0); item >= 0; item = items.nextSetBit(item + 1)) {
+                final var reduced = grammar.reducedProduction(item);
+                if (reduced < 0) {
+                    continue;
+                }
 
-            final var items = collections.get(idx);
-            including.put(status, items);
-            belongTo.put(items, status);
+                if (reduced == 0) {
+                    // S -> S' .
+                    // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
+                    status.setAction(TokenKind.eof(), Action.accept());
+                } else {
+                    // A -> alpha .
+                    // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
+                    final var production = productions.get(reduced);
+                    final var follow = grammar.follow[grammar.heads[reduced]];
+                    for (int a = follow.nextSetBit(0); a >= 0; a = follow.nextSetBit(a + 1)) {
+                        setReduce(status, grammar.terminals.get(a), production);
+                    }
+                }
+            }
         }
     }
 
-    /**
-     * @param head 头部符号
-     * @return 返回一个流, 其中的元素都是以 head 为头的产生式
-     */
-    private Stream<Production> getProductionsByHead(Term head) {
-        return productions.stream().filter(production -> production.head().equals(head));
-    }
+    // 我们在 Status.setAction/setGoto 中检查规约-规约冲突与移入-规约冲突
+    // 如果有冲突, 它们会抛出 RuntimeException
 
     /**
-     * 构造项集 {@code sourceItem} 的闭包, 相当于理论课中的 CLOSURE(I) 函数
+     * 填入规约动作, 与已填入的移入动作冲突时按优先级消解 (移入动作总是先于规约动作填入)
+     * <br>
+     * 与 yacc 相同: 产生式与终结符都有优先级时, 优先级高的一方胜出; 优先级相同时左结合取规约, 右结合取移入,
+     * 无结合性则该格子为错误. 任何一方没有优先级时仍视为冲突.
+     * <br>
+     * 按优先级消解过的格子记下参与消解的产生式, 之后再有另一条产生式要在该格子规约时报告规约-规约冲突,
+     * 不论消解的结果是否保留了移入.
      *
-     * @param sourceItem 项集 I
-     * @return 闭包
+     * @param status     状态
+     * @param terminal   向前看的终结符
+     * @param production 要规约的产生式
      */
-    private Set<Item> constructClosure(Set<Item> sourceItem) {
-        // 采用 BFS 的方法来避免每次都检测集合的更改
-        final var result = new LinkedHashSet<>(sourceItem);
-        // 已经找到, 但是还未完全探索其能展开的项的项
-        // 类似于 BFS 的队列或者是 mark-and-sweep GC 算法里的灰色列表
-        final var unexpanded = new ArrayDeque<>(sourceItem);
+    private void setReduce(Status status, TokenKind terminal, Production production) {
+        final var resolvedInStatus = resolvedByPrecedence.get(status);
+        final var resolved = resolvedInStatus == null ? null : resolvedInStatus.get(terminal);
+        if (resolved != null) {
+            if (!resolved.equals(production)) {
+                throw new RuntimeException("Reduce/reduce conflict at %s on %d between %s and %s"
+                        .formatted(terminal, status.index(), resolved, production));
+            }
+            return;
+        }
 
-        while (!unexpanded.isEmpty()) {
-            final var top = unexpanded.pollFirst();
-            // 获得当前项中点后面的符号
-            top.getAfterDot().ifPresent(afterDot ->
-                // 随后查找以该符号作为头部的产生式
-                getProductionsByHead(afterDot)
-                    // 构造点在对应产生式开头的新项
-                    .map(production -> new Item(production, 0))
-                    // 对于不在 result 中的新项
-                    .filter(item -> !result.contains(item))
-                    // 加入队列并加入结果中
-                    .peek(unexpanded::add)
-                    .forEach(result::add));
+        final var existing = status.getAction(terminal);
+        if (existing.getKind() != Action.ActionKind.Shift) {
+            status.setAction(terminal, Action.reduce(production));
+            return;
         }
 
-        return result;
-    }
+        final var terminalPrecedence = GrammarInfo.getPrecedence(terminal);
+        final var productionPrecedence = GrammarInfo.getPrecedence(production);
+        if (terminalPrecedence.isEmpty() || productionPrecedence.isEmpty()) {
+            // 交给 setAction 报告冲突
+            status.setAction(terminal, Action.reduce(production));
+            return;
+        }
 
-    /**
-     * 相当于理论课中的 GO(I, X) 函数 (转移函数)
-     *
-     * @param items 当前项集 I
-     * @param term  文法符号 X
-     * @return I 关于 X 的后继项目集
-     */
-    private Set<Item> constructGoto(Set<Item> items, Term term) {
-        final var kernelForGoto = items.stream()
-            // 先筛选出 I 中所有点后面是 term 的项
-            .filter(item -> item.getAfterDot().map(term::equals).orElse(false))
-            // 然后分别求出每一个项的后继项
-            // 这个项集就是后继项目集的核
-            .map(Item::getNextItem).flatMap(Optional::stream)
-            .collect(Collectors.toSet());
-
-        // 随后从后继项目集的核中构造闭包即可得到后继项目集
-        return constructClosure(kernelForGoto);
+        final var shiftLevel = terminalPrecedence.get().level();
+        final var reduceLevel = productionPrecedence.get().level();
+        final Action action;
+        if (reduceLevel != shiftLevel) {
+            action = reduceLevel > shiftLevel ? Action.reduce(production) : existing;
+        } else {
+            action = switch (productionPrecedence.get().associativity()) {
+                case LEFT -> Action.reduce(production);
+                case RIGHT -> existing;
+                case NONASSOC -> Action.error();
+            };
+        }
+        // 覆盖已填入的移入动作, 这绕过了 setAction 的冲突检查, 因此自行记下参与消解的产生式
+        status.action().put(terminal, action);
+        resolvedByPrecedence.computeIfAbsent(status, key -> new HashMap<>()).put(terminal, production);
     }
 
+    //==================== LALR(1) 与规范 LR(1) ==============================//
+
+    private List<LR1Builder.State> lookaheadStates = null;
+
     /**
-     * 构造 LR(0) 规范项目集族
-     *
-     * @param initItem 起始项目 S -> . S'
-     * @return 规范项目集族
+     * 构造带向前看符号的项目集族并填表. 与 SLR(1) 的区别只在于规约动作只填在项目的向前看符号上, 而不是整个 FOLLOW 集上
      */
-    private List<Set<Item>> constructCanonicalLRCollection(Item initItem) {
-        // 先收集所有的文法符号备用
-        final var terms = new LinkedHashSet<Term>();
-        terms.addAll(nonTerminals);
-        terms.addAll(terminals);
+    private void runWithLookaheads() {
+        lookaheadStates = new LR1Builder(grammar, mode == Mode.LALR).build();
 
-        // 构造初始项目集族
-        final var initClosure = constructClosure(Set.of(initItem));
-
-        // 同样以 BFS 形式搜索
-        final var result = new LinkedHashSet<>(Set.of(initClosure));
-        final var unexpanded = new ArrayDeque<>(Set.of(initClosure));
+        for (final var state : lookaheadStates) {
+            allStatusInIndexOrder.add(Status.create(state.index));
+        }
+        dumpItems();
 
-        while (!unexpanded.isEmpty()) {
-            final var items = unexpanded.pollFirst();
-
-            // 对于每个未被探索的集族
-            for (final var term : terms) {
-                // 尝试对每一个文法符号都求一个后继项目集
-                final var to = constructGoto(items, term);
-                // 如果还没被加入到 result 中
-                if (!to.isEmpty() && !result.contains(to)) {
-                    // 就加入 result 和待探索列表中
-                    result.add(to);
-                    unexpanded.addLast(to);
+        final var argumentProduction = productions.get(0);
+        for (final var state : lookaheadStates) {
+            final var status = allStatusInIndexOrder.get(state.index);
+
+            for (int i = 0; i < state.transitionSymbols.length; i++) {
+                final var symbol = grammar.symbolToTerm(state.transitionSymbols[i]);
+                final var next = allStatusInIndexOrder.get(state.transitionTargets[i].index);
+                if (symbol instanceof TokenKind tokenKind) {
+                    status.setAction(tokenKind, Action.shift(next));
+                } else {
+                    status.setGoto((NonTerminal) symbol, next);
                 }
             }
-        }
 
-        return new ArrayList<>(result);
-    }
-
-    /**
-     * 构造 LR 分析表 (填充各个 status 中的 action 与 goto)
-     */
-    private void genTable() {
-        // 依索引顺序对每个状态的每个项目
-        for (final var status : allStatusInIndexOrder) {
-            for (final var item : including.get(status)) {
-                final var afterDotOpt = item.getAfterDot();
-
-                // 根据项目的点的位置和点后面跟着的文法符号进行分类
-                if (afterDotOpt.isEmpty()) {
-                    final var argumentProduction = productions.get(0);
-                    if (item.production().equals(argumentProduction)) {
-                        // S -> S' .
-                        // 如果项目代表起始文法的末尾, 那么再遇到 EOF 就 accept 了
-                        status.setAction(TokenKind.eof(), Action.accept());
-                    } else {
-                        // A -> alpha .
-                        // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
-                        final var production = item.production();
-                        final var head = production.head();
-                        for (final var a : follow.get(head)) {
-                            status.setAction(a, Action.reduce(production));
-                        }
-                    }
+            for (int i = 0; i < state.closureItems.length; i++) {
+                final var reduced = grammar.reducedProduction(state.closureItems[i]);
+                if (reduced < 0) {
+                    continue;
+                }
 
-                } else {
-                    final var symbol = afterDotOpt.get();
-                    final var next = belongTo.get(constructGoto(including.get(status), symbol));
-
-                    if (symbol instanceof TokenKind tokenKind) {
-                        // A -> alpha . a beta
-                        // 如果项目代表某个产生式的中间, 并且接着一个终结符的情况, 我们就移入该终结符
-                        status.setAction(tokenKind, Action.shift(next));
-                    } else if (symbol instanceof NonTerminal nonTerminal) {
-                        // A -> alpha . B beta
-                        // 如果项目代表某个产生式的中间, 并且接着一个非终结符的情况,
-                        // 我们就转移到 B 解析之后的状态中去 (即 GO(I, B) 对应的状态)
-                        status.setGoto(nonTerminal, next);
+                final var production = productions.get(reduced);
+                final var lookaheads = state.closureLookaheads[i];
+                for (int t = lookaheads.nextSetBit(0); t >= 0; t = lookaheads.nextSetBit(t + 1)) {
+                    final var terminal = grammar.terminals.get(t);
+                    if (production.equals(argumentProduction)) {
+                        // S -> S' ., 向前看符号只有 EOF
+                        status.setAction(terminal, Action.accept());
                     } else {
-                        throw new RuntimeException("Unknown type of Term");
+                        setReduce(status, terminal, production);
                     }
                 }
             }
         }
     }
-
-    // 我们在 Status.setAction/setGoto 中检查规约-规约冲突与移入-规约冲突
-    // 如果有冲突, 它们会抛出 RuntimeException
 }
@@ -0,0 +1,183 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Optional;
+
+/**
+ * LR 分析表各格子的访问计数, 用于按热度重新编号状态 (见 {@link LRTable#renumberByProfile(TableProfile)})
+ * <br>
+ * 驱动程序每一步查 action 表时调用 {@link #record}, 记下所在的状态与当前终结符. 在有代表性的输入上分析 (可以多次分析累计计数) 后,
+ * 用 {@link #save} 写入文本文件, 之后构造或读取同一张分析表时用 {@link #load} 读回.
+ * <br>
+ * 文件第一行为 "lr-profile" 与分析表的指纹 (由各状态的编号, 动作与 goto 算出), 其余每行为状态编号, 计数与终结符名字, 以空格分隔,
+ * 只列出计数不为 0 的格子. 状态编号只对记录时所用的分析表有意义, 因此指纹不符的文件视为不存在.
+ */
+public final class TableProfile {
+    private static final String HEADER = "lr-profile";
+
+    /**
+     * @param table 要记录的分析表, 即驱动程序所用的表
+     * @return 计数全为 0 的配置
+     */
+    public static TableProfile create(LRTable table) {
+        return new TableProfile(table);
+    }
+
+    /**
+     * 读取配置文件
+     *
+     * @param path  配置文件路径
+     * @param table 记录时所用的分析表
+     * @return 配置; 文件不存在, 格式有误或不是为该分析表记录的时为空
+     */
+    public static Optional<TableProfile> load(String path, LRTable table) {
+        if (!Files.isRegularFile(Paths.get(path))) {
+            return Optional.empty();
+        }
+
+        final var lines = FileUtils.readLines(path);
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER + " " + Long.toHexString(fingerprint(table)))) {
+            return Optional.empty();
+        }
+
+        final var profile = new TableProfile(table);
+        final var terminals = new HashMap<String, TokenKind>();
+        table.terminals().forEach(terminal -> terminals.put(terminal.getTermName(), terminal));
+        try {
+            for (final var line : lines.subList(1, lines.size())) {
+                // 终结符名字放在最后, 名字本身可能是 "," 之类的符号
+                final var fields = line.split(" ", 3);
+                final var state = Integer.parseInt(fields[0]);
+                final var count = Long.parseLong(fields[1]);
+                final var terminal = terminals.get(fields[2]);
+                if (terminal == null || state < 0 || state >= profile.stateCount || count < 0) {
+                    return Optional.empty();
+                }
+                profile.counts[state * profile.terminalCount + profile.columnOfCode[terminal.getCode() + 1]] += count;
+            }
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+        return Optional.of(profile);
+    }
+
+    /**
+     * 将计数写入文件
+     *
+     * @param path 配置文件路径
+     */
+    public void save(String path) {
+        final var lines = new ArrayList<String>();
+        lines.add(HEADER + " " + Long.toHexString(fingerprint(table)));
+        final var terminals = table.terminals();
+        for (int state = 0; state < stateCount; state++) {
+            for (int column = 0; column < terminalCount; column++) {
+                final var count = counts[state * terminalCount + column];
+                if (count > 0) {
+                    lines.add("%d %d %s".formatted(state, count, terminals.get(column).getTermName()));
+                }
+            }
+        }
+        FileUtils.writeLines(path, lines);
+    }
+
+    /**
+     * 记下一次对 action 表的访问, 由驱动程序调用
+     *
+     * @param state 状态编号
+     * @param code  当前终结符的码点
+     */
+    public void record(int state, int code) {
+        final var column = code + 1 < columnOfCode.length ? columnOfCode[code + 1] : -1;
+        if (column >= 0) {
+            counts[state * terminalCount + column]++;
+        }
+    }
+
+    /**
+     * @return 状态 status 被访问的次数
+     */
+    public long hits(Status status) {
+        long sum = 0;
+        final var row = status.index() * terminalCount;
+        for (int column = 0; column < terminalCount; column++) {
+            sum += counts[row + column];
+        }
+        return sum;
+    }
+
+    /**
+     * @return 状态 status 遇到终结符 terminal 的次数
+     */
+    public long hits(Status status, TokenKind terminal) {
+        final var code = terminal.getCode();
+        final var column = code + 1 < columnOfCode.length ? columnOfCode[code + 1] : -1;
+        return column < 0 ? 0 : counts[status.index() * terminalCount + column];
+    }
+
+    /**
+     * @return 是否是为分析表 table 记录或读取的配置
+     */
+    public boolean isFor(LRTable table) {
+        return this.table == table;
+    }
+
+    /**
+     * 分析表的指纹: 各状态的编号, 非错误的动作与 goto (含途经的单产生式链) 的散列. 同一状态内的格子按无序集合合并,
+     * 与列的顺序及 HashMap 的遍历顺序无关
+     */
+    static long fingerprint(LRTable table) {
+        long hash = 1;
+        for (final var status : table.statusInIndexOrder()) {
+            long row = status.index();
+            for (final var entry : status.action().entrySet()) {
+                if (entry.getValue().getKind() != Action.ActionKind.Error) {
+                    row += mix(entry.getKey().getTermName(), entry.getValue().toString());
+                }
+            }
+            for (final var entry : status.goto_().entrySet()) {
+                if (!entry.getValue().isError()) {
+                    final var chain = table.getUnitChain(status, entry.getKey());
+                    row += mix(entry.getKey().getTermName(), entry.getValue().index() + " " + chain);
+                }
+            }
+            hash = hash * 0x100000001B3L + row;
+        }
+        return hash;
+    }
+
+    private static long mix(String key, String value) {
+        final var hash = (long) key.hashCode() * 0x9E3779B97F4A7C15L + value.hashCode();
+        return hash ^ (hash >>> 29);
+    }
+
+    private TableProfile(LRTable table) {
+        this.table = table;
+        final var terminals = table.terminals();
+        this.terminalCount = terminals.size();
+        this.stateCount = table.statusInIndexOrder().stream().mapToInt(Status::index).max().orElse(-1) + 1;
+        this.counts = new long[stateCount * terminalCount];
+
+        // 下标为码点加 1, 与 CompiledLRTable 一致
+        final var maxCode = terminals.stream().mapToInt(TokenKind::getCode).max().orElse(-1);
+        this.columnOfCode = new int[maxCode + 2];
+        Arrays.fill(columnOfCode, -1);
+        for (int column = 0; column < terminalCount; column++) {
+            columnOfCode[terminals.get(column).getCode() + 1] = column;
+        }
+    }
+
+    private final LRTable table;
+    private final int terminalCount;
+    private final int stateCount;
+    // 行为状态编号, 列为终结符在分析表中的列号
+    private final long[] counts;
+    private final int[] columnOfCode;
+}
@@ -0,0 +1,129 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 消去 LR 分析表中的单产生式规约 (shortcutting unit reductions)
+ * <br>
+ * 形如 A -> B 的单产生式 (B 为非终结符) 规约时只弹出一个状态再压入一个状态, 对语义动作而言通常只是把属性原样上传.
+ * 若 goto(s, B) 到达的状态 t 唯一的动作是按 A -> B 规约 (其余格子都是错误, 也没有 goto), 那么进入 t 之后的下一步必然是弹出 t
+ * 并转移到 goto(s, A). 因此可以把 goto(s, B) 直接改为 goto(s, A), 并记下途经的单产生式; goto(s, A) 又是这样的状态时继续向上.
+ * <br>
+ * 这样的状态只能经由 goto 进入, 所有 goto 改写后它们都不再可达, 从表中删去, 其余状态按原来的顺序重新编号.
+ * t 中原为错误的格子改由 goto(s, A) 处理: 它可能先做几次规约才报告错误, 但这些规约不消耗词法单元,
+ * 而 LR 分析表在移入错误的词法单元之前一定会遇到出错的格子, 因此仍在同一个词法单元上报告错误.
+ */
+final class UnitProductionShortcut {
+    /**
+     * @param table 分析表
+     * @return 消去单产生式规约后的分析表; 没有可消去的状态时返回 table 本身
+     */
+    static LRTable apply(LRTable table) {
+        final var terminals = table.terminals();
+        final var nonTerminals = table.nonTerminals();
+
+        // 只做单产生式规约的状态及其产生式
+        final var unitOf = new HashMap<Status, Production>();
+        for (final var status : table.statusInIndexOrder()) {
+            final var unit = unitReduction(status, terminals, nonTerminals);
+            if (unit != null) {
+                unitOf.put(status, unit);
+            }
+        }
+        if (unitOf.isEmpty()) {
+            return table;
+        }
+
+        final var kept = new ArrayList<Status>();
+        final var renumbered = new HashMap<Status, Status>();
+        for (final var status : table.statusInIndexOrder()) {
+            if (!unitOf.containsKey(status)) {
+                renumbered.put(status, Status.create(kept.size()));
+                kept.add(status);
+            }
+        }
+
+        final var statusInIndexOrder = new ArrayList<Status>(kept.size());
+        final var unitChains = new HashMap<Status, Map<NonTerminal, List<Production>>>();
+        for (final var old : kept) {
+            final var status = renumbered.get(old);
+            statusInIndexOrder.add(status);
+
+            for (final var terminal : terminals) {
+                final var action = old.getAction(terminal);
+                switch (action.getKind()) {
+                    // 被删去的状态只能经由 goto 进入, 移入的目标一定还在表中
+                    case Shift -> status.setAction(terminal, Action.shift(renumbered.get(action.getStatus())));
+                    case Reduce, Accept -> status.setAction(terminal, action);
+                    case Error -> {
+                    }
+                }
+            }
+
+            for (final var nonTerminal : nonTerminals) {
+                var target = old.getGoto(nonTerminal);
+                if (target.isError()) {
+                    continue;
+                }
+
+                // 已经消去过的表再次消去时接在原有的链之后
+                final var chain = new ArrayList<>(table.getUnitChain(old, nonTerminal));
+                while (unitOf.containsKey(target)) {
+                    final var unit = unitOf.get(target);
+                    chain.add(unit);
+                    target = old.getGoto(unit.head());
+                    if (target.isError() || chain.size() > unitOf.size()) {
+                        throw new RuntimeException("Broken unit production chain at %s on %d".formatted(nonTerminal, old.index()));
+                    }
+                }
+
+                status.setGoto(nonTerminal, renumbered.get(target));
+                if (!chain.isEmpty()) {
+                    unitChains.computeIfAbsent(status, key -> new HashMap<>()).put(nonTerminal, List.copyOf(chain));
+                }
+            }
+        }
+
+        return new LRTable(statusInIndexOrder, terminals, nonTerminals, unitChains);
+    }
+
+    /**
+     * @return 状态唯一的动作为按单产生式规约时返回该产生式, 否则为 null
+     */
+    private static Production unitReduction(Status status, List<TokenKind> terminals, List<NonTerminal> nonTerminals) {
+        for (final var nonTerminal : nonTerminals) {
+            if (!status.getGoto(nonTerminal).isError()) {
+                return null;
+            }
+        }
+
+        Production unit = null;
+        for (final var terminal : terminals) {
+            final var action = status.getAction(terminal);
+            switch (action.getKind()) {
+                case Shift, Accept -> {
+                    return null;
+                }
+                case Reduce -> {
+                    if (unit != null && !unit.equals(action.getProduction())) {
+                        return null;
+                    }
+                    unit = action.getProduction();
+                }
+                case Error -> {
+                }
+            }
+        }
+
+        final var isUnit = unit != null && unit.body().size() == 1 && unit.body().get(0) instanceof NonTerminal;
+        return isUnit ? unit : null;
+    }
+
+    private UnitProductionShortcut() {
+    }
+}
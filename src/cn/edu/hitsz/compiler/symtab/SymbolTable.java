@@ -4,9 +4,10 @@ import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 /**
  * 符号表
@@ -14,18 +15,30 @@ import java.util.Map;
  * 由于源语言比较简易, 加之 Java 中具有非常好用的通用数据结构类型, 本项目其实并不一定需要一个集中的 "符号表" 来存储源语言中的
  * <b>所有符号的所有信息</b>. 但为了切合理论课程教学, 提高实验实践技能的通用性, 我们按照一般编译器项目中符号表的设计设计了该符号表.
  * 其在代码中的作用可能并不明显, 但我们希望同学们可以借此体验符号表的设计思想.
+ * <br>
+ * 符号表同时也是标识符的驻留表: 每个符号在加入时被分配一个从 0 开始的稠密整数 id (即其加入的次序),
+ * 词法单元, 语义分析与 IR 变量都只携带该 id, 之后各阶段以 id 为下标直接访问数组, 不必再反复对字符串求哈希.
  */
 public class SymbolTable {
-    public Map<String, SymbolTableEntry> symbolTable = new HashMap<>();
     /**
      * 获取符号表中已有的条目
      *
      * @param text 符号的文本表示
-     * @return 该符号在符号表中的条目
-     * @throws RuntimeException 该符号在表中不存在
+     * @return 该符号在符号表中的条目, 不存在时返回 null
      */
     public SymbolTableEntry get(String text) {
-        return this.symbolTable.get(text);
+        final var id = find(text, 0, text.length(), text.hashCode());
+        return id < 0 || removed.get(id) ? null : entries.get(id);
+    }
+
+    /**
+     * 按 id 获取符号表中已有的条目
+     *
+     * @param id 符号的 id
+     * @return 该符号在符号表中的条目, 已被删除时返回 null
+     */
+    public SymbolTableEntry get(int id) {
+        return removed.get(id) ? null : entries.get(id);
     }
 
     /**
@@ -36,10 +49,58 @@ public class SymbolTable {
      * @throws RuntimeException 该符号已在表中存在
      */
     public SymbolTableEntry add(String text) {
-        if(this.symbolTable.containsKey(text)) {
+        if (has(text)) {
             throw new RuntimeException("Symbol already exists in table");
         }
-        return this.symbolTable.put(text, new SymbolTableEntry(text));
+        return entries.get(intern(text));
+    }
+
+    /**
+     * 驻留一个符号, 若不存在则新增条目
+     *
+     * @param text 符号的文本表示
+     * @return 该符号的 id
+     */
+    public int intern(String text) {
+        return intern(text, 0, text.length(), text.hashCode());
+    }
+
+    /**
+     * 驻留源文本中 [start, end) 处的符号, 若不存在则新增条目
+     * <br>
+     * 直接在源文本上查找与比较, 只有新符号才会截取出字符串. hash 需与 {@link String#hashCode()} 的算法一致,
+     * 词法分析器在扫描标识符时可以顺带算出.
+     *
+     * @param source 源文本
+     * @param start  符号的起始位置
+     * @param end    符号的结束位置 (不含)
+     * @param hash   符号文本的哈希值
+     * @return 该符号的 id
+     */
+    public int intern(CharSequence source, int start, int end, int hash) {
+        final var found = find(source, start, end, hash);
+        if (found >= 0) {
+            if (removed.get(found)) {
+                // 复用被删除的符号的 id, 但其条目需要重新构造, 语义分析得到的信息已经作废
+                removed.clear(found);
+                entries.set(found, new SymbolTableEntry(entries.get(found).getText(), found));
+            }
+            return found;
+        }
+
+        final var id = entries.size();
+        entries.add(new SymbolTableEntry(source.subSequence(start, end).toString(), id));
+        if (hashes.length == id) {
+            hashes = Arrays.copyOf(hashes, id * 2 + 16);
+        }
+        hashes[id] = hash;
+
+        if ((id + 1) * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            insert(id);
+        }
+        return id;
     }
 
     /**
@@ -49,7 +110,24 @@ public class SymbolTable {
      * @return 该符号的条目是否位于符号表中
      */
     public boolean has(String text) {
-        return this.symbolTable.containsKey(text);
+        return get(text) != null;
+    }
+
+    /**
+     * 删除符号表中的条目. 被删除的条目不再出现在 {@link #has}, {@link #get} 与 {@link #dumpTable} 的结果中,
+     * 但其 id 不会被分配给其它符号, 之后再次驻留同一符号时会重新启用该 id.
+     *
+     * @param id 待删除符号的 id
+     */
+    public void remove(int id) {
+        removed.set(id);
+    }
+
+    /**
+     * @return 符号表中条目的数量, 也即下一个新符号的 id
+     */
+    public int size() {
+        return entries.size();
     }
 
     /**
@@ -57,8 +135,8 @@ public class SymbolTable {
      *
      * @return 符号表的所有条目
      */
-    private Map<String, SymbolTableEntry> getAllEntries() {
-        return this.symbolTable;
+    private List<SymbolTableEntry> getAllEntries() {
+        return this.entries;
     }
 
     /**
@@ -67,7 +145,12 @@ public class SymbolTable {
      * @param path 输出文件路径
      */
     public void dumpTable(String path) {
-        final var entriesInOrder = new ArrayList<>(getAllEntries().values());
+        final var entriesInOrder = new ArrayList<SymbolTableEntry>();
+        for (final var entry : getAllEntries()) {
+            if (!removed.get(entry.getId())) {
+                entriesInOrder.add(entry);
+            }
+        }
         entriesInOrder.sort(Comparator.comparing(SymbolTableEntry::getText));
 
         final var lines = new ArrayList<String>();
@@ -78,5 +161,57 @@ public class SymbolTable {
 
         FileUtils.writeLines(path, lines);
     }
-}
 
+    //==================== 以下为驻留表的实现 ==============================//
+
+    // 开放寻址的哈希表, 每个槽存放 id + 1, 0 表示空槽; 负载因子不超过 1/2
+    private int[] slots = new int[16];
+    // 以 id 为下标的各条目文本的哈希值
+    private int[] hashes = new int[16];
+    private final List<SymbolTableEntry> entries = new ArrayList<>();
+    // 被删除的条目的 id
+    private final BitSet removed = new BitSet();
+
+    private int find(CharSequence source, int start, int end, int hash) {
+        final var mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            final var id = slots[slot] - 1;
+            if (hashes[id] == hash && regionEquals(entries.get(id).getText(), source, start, end)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int id) {
+        final var mask = slots.length - 1;
+        var slot = spread(hashes[id]) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int id = 0; id < entries.size(); id++) {
+            insert(id);
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean regionEquals(String text, CharSequence source, int start, int end) {
+        if (text.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,306 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 编译过程中的诊断信息收集器
+ * <br>
+ * 词法分析与语法分析遇到错误时不再直接输出, 而是把错误码, 位置 (偏移与行号) 与附加信息记录到本收集器中,
+ * 最后由 {@link #emit()} 一次性输出. 记录以若干个 int 数组的形式保存, 容量有上限, 超出上限的记录只计数不保存.
+ * <br>
+ * 同一行内连续出现的相同错误 (种类与附加信息都相同, 如一串重复的同一个非法字符) 会被合并为一条记录,
+ * 只记下第一个的位置和重复次数; 附加信息不同的错误各自保留, 以免输出中丢失后面几个错误的内容.
+ * <br>
+ * 可以设置错误数上限, 累计错误数超过上限时抛出 {@link LimitExceededException}, 让明显有问题的输入尽早失败.
+ */
+public class Diagnostics {
+    /**
+     * 诊断信息的种类
+     */
+    public enum Code {
+        INVALID_CHAR("Error: invalid char %c"),
+        SYNTAX_ERROR("Syntax error!");
+
+        Code(String format) {
+            this.format = format;
+        }
+
+        private final String format;
+    }
+
+    /**
+     * 累计错误数超过上限时抛出的异常
+     */
+    public static class LimitExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public LimitExceededException(int maxErrors) {
+            super("Too many errors (more than %d), aborting".formatted(maxErrors));
+        }
+    }
+
+    /**
+     * 位置未知时使用的偏移与行号
+     */
+    public static final int UNKNOWN = -1;
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * 构造保存至多 256 条记录, 不限制错误数的收集器
+     */
+    public Diagnostics() {
+        this(DEFAULT_CAPACITY, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param capacity  至多保存的记录数
+     * @param maxErrors 错误数上限, 超过时中止分析
+     */
+    public Diagnostics(int capacity, int maxErrors) {
+        this.capacity = capacity;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * @return 与本收集器容量和错误数上限都相同的空收集器, 用于并行分析时各部分各自收集, 最后再 {@link #addAll} 合并
+     */
+    public Diagnostics fork() {
+        return new Diagnostics(capacity, maxErrors);
+    }
+
+    /**
+     * 记录一个错误
+     *
+     * @param code   错误种类
+     * @param offset 在源文本中的偏移, 未知时为 {@link #UNKNOWN}
+     * @param line   所在行号 (从 1 开始), 未知时为 {@link #UNKNOWN}
+     * @param detail 附加信息, 如非法字符本身
+     * @throws LimitExceededException 累计错误数超过上限
+     */
+    public void report(Code code, int offset, int line, int detail) {
+        add(code.ordinal(), offset, line, detail, 1);
+    }
+
+    /**
+     * 将另一收集器的记录按顺序追加到本收集器中, 用于合并并行分析的各部分的结果
+     *
+     * @param other     另一收集器
+     * @param lineDelta 另一收集器中的行号需要加上的值
+     * @throws LimitExceededException 累计错误数超过上限
+     */
+    public void addAll(Diagnostics other, int lineDelta) {
+        for (int i = 0; i < other.size; i++) {
+            final var line = other.lines[i] == UNKNOWN ? UNKNOWN : other.lines[i] + lineDelta;
+            add(other.codes[i], other.offsets[i], line, other.details[i], other.repeats[i]);
+        }
+        // 另一收集器未能保存的记录无法再合并, 只计数
+        dropped += other.dropped;
+        errorCount += other.droppedErrors;
+        droppedErrors += other.droppedErrors;
+        checkLimit();
+    }
+
+    /**
+     * 撤回源文本 [from, to) 中某种错误的记录, 在原处换上 replacement 中的记录, 并平移其后同种记录的偏移与行号,
+     * 用于增量词法分析: 编辑后重新扫描的范围内的旧错误已不再成立.
+     * <br>
+     * 被合并的记录只记下第一个错误的偏移, 因此调用者需保证同一行内的同种记录要么全在范围内, 要么全在范围外.
+     * 因容量不足而未保存的记录无法撤回, 仍照常计数. 偏移未知的记录不受影响.
+     *
+     * @param code        错误种类
+     * @param from        重新扫描的范围在编辑前的起点
+     * @param to          重新扫描的范围在编辑前的终点 (不含)
+     * @param replacement 重新扫描得到的记录, 其偏移已是编辑后的位置
+     * @param lineDelta   replacement 中的行号需要加上的值
+     * @param offsetShift 编辑导致的偏移变化, 加到位于 to 及其之后的记录上
+     * @param lineShift   编辑导致的行数变化, 加到位于 to 及其之后的记录上
+     * @throws LimitExceededException 替换后的错误数超过上限
+     */
+    public void replaceRange(Code code, int from, int to, Diagnostics replacement, int lineDelta,
+                             int offsetShift, int lineShift) {
+        final var ordinal = code.ordinal();
+        // 新记录放在第一个不早于 from 的同种记录处, 没有时放在最后一条同种记录之后
+        var insertAt = -1;
+        var lastBefore = -1;
+        var kept = 0;
+        for (int i = 0; i < size; i++) {
+            final var offset = offsets[i];
+            if (codes[i] == ordinal && offset != UNKNOWN) {
+                if (offset >= from && insertAt < 0) {
+                    insertAt = kept;
+                }
+                if (offset < from) {
+                    lastBefore = kept;
+                } else if (offset < to) {
+                    errorCount -= repeats[i];
+                    continue;
+                } else {
+                    offsets[i] = offset + offsetShift;
+                    lines[i] += lineShift;
+                }
+            }
+            move(i, kept++);
+        }
+        size = kept;
+        if (insertAt < 0) {
+            insertAt = lastBefore + 1;
+        }
+
+        // 把 insertAt 之后的记录挪到末尾, 逐条追加新记录后再接回去
+        final var tail = new Diagnostics(size - insertAt, Integer.MAX_VALUE);
+        for (int i = insertAt; i < size; i++) {
+            tail.append(codes[i], offsets[i], lines[i], details[i], repeats[i]);
+            errorCount -= repeats[i];
+        }
+        size = insertAt;
+        for (int i = 0; i < replacement.size; i++) {
+            final var line = replacement.lines[i] == UNKNOWN ? UNKNOWN : replacement.lines[i] + lineDelta;
+            append(replacement.codes[i], replacement.offsets[i], line, replacement.details[i], replacement.repeats[i]);
+        }
+        dropped += replacement.dropped;
+        errorCount += replacement.droppedErrors;
+        droppedErrors += replacement.droppedErrors;
+        for (int i = 0; i < tail.size; i++) {
+            append(tail.codes[i], tail.offsets[i], tail.lines[i], tail.details[i], tail.repeats[i]);
+        }
+        checkLimit();
+    }
+
+    /**
+     * @return 是否有某种错误记录在第 line 行
+     */
+    public boolean hasRecordOnLine(Code code, int line) {
+        for (int i = 0; i < size; i++) {
+            if (codes[i] == code.ordinal() && lines[i] == line) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 累计的错误数, 被合并的重复错误也各计一次
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public boolean hasErrors() {
+        return errorCount > 0;
+    }
+
+    /**
+     * @return 各条记录格式化后的文本
+     */
+    public List<String> format() {
+        final var result = new ArrayList<String>(size + 1);
+        final var codeValues = Code.values();
+        for (int i = 0; i < size; i++) {
+            final var text = new StringBuilder(codeValues[codes[i]].format.formatted(details[i]));
+            if (offsets[i] != UNKNOWN) {
+                text.append(" (line ").append(lines[i]).append(", offset ").append(offsets[i]).append(')');
+            }
+            if (repeats[i] > 1) {
+                text.append(", ").append(repeats[i] - 1).append(" more on this line");
+            }
+            result.add(text.toString());
+        }
+        if (dropped > 0) {
+            result.add("... %d more diagnostics omitted".formatted(dropped));
+        }
+        return result;
+    }
+
+    /**
+     * 一次性输出所有记录, 并清空本收集器
+     */
+    public void emit() {
+        if (size == 0 && dropped == 0) {
+            return;
+        }
+
+        final var text = new StringBuilder();
+        for (final var line : format()) {
+            text.append(line).append('\n');
+        }
+        System.out.print(text);
+        clear();
+    }
+
+    public void clear() {
+        size = 0;
+        dropped = 0;
+        errorCount = 0;
+        droppedErrors = 0;
+    }
+
+    private void add(int code, int offset, int line, int detail, int repeat) {
+        append(code, offset, line, detail, repeat);
+        checkLimit();
+    }
+
+    private void append(int code, int offset, int line, int detail, int repeat) {
+        errorCount += repeat;
+        final var last = size - 1;
+        if (last >= 0 && codes[last] == code && lines[last] == line && details[last] == detail
+                && line != UNKNOWN && dropped == 0) {
+            repeats[last] += repeat;
+        } else if (size < capacity) {
+            ensureCapacity(size + 1);
+            codes[size] = code;
+            offsets[size] = offset;
+            lines[size] = line;
+            details[size] = detail;
+            repeats[size] = repeat;
+            size++;
+        } else {
+            dropped++;
+            droppedErrors += repeat;
+        }
+    }
+
+    private void move(int from, int to) {
+        codes[to] = codes[from];
+        offsets[to] = offsets[from];
+        lines[to] = lines[from];
+        details[to] = details[from];
+        repeats[to] = repeats[from];
+    }
+
+    private void checkLimit() {
+        if (errorCount > maxErrors) {
+            throw new LimitExceededException(maxErrors);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (codes.length >= required) {
+            return;
+        }
+        final var newLength = Math.min(capacity, Math.max(required, codes.length * 2 + 8));
+        codes = Arrays.copyOf(codes, newLength);
+        offsets = Arrays.copyOf(offsets, newLength);
+        lines = Arrays.copyOf(lines, newLength);
+        details = Arrays.copyOf(details, newLength);
+        repeats = Arrays.copyOf(repeats, newLength);
+    }
+
+    private final int capacity;
+    private final int maxErrors;
+
+    // 以下各数组的第 i 项共同构成第 i 条记录
+    private int[] codes = new int[0];
+    private int[] offsets = new int[0];
+    private int[] lines = new int[0];
+    private int[] details = new int[0];
+    private int[] repeats = new int[0];
+    private int size = 0;
+
+    // 因容量不足而未保存的记录数, 及其包含的错误数
+    private int dropped = 0;
+    private int droppedErrors = 0;
+    private int errorCount = 0;
+}
@@ -62,6 +62,11 @@ public final class FilePathConfig {
      */
     public static final String ASSEMBLY_LANGUAGE_PATH = "data/out/assembly_language.asm";
 
+    /**
+     * LR 分析表与文法的二进制缓存, 输入文件不变时用于代替解析 CSV 与 grammar.txt
+     */
+    public static final String LR1_TABLE_CACHE_PATH = "data/out/LR1_table.bin";
+
     private FilePathConfig() {
     }
 }
@@ -5,9 +5,8 @@ import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -23,25 +22,25 @@ public class IREmulator {
             switch (instruction.getKind()) {
                 case MOV -> {
                     final var from = eval(instruction.getFrom());
-                    environment.put(instruction.getResult(), from);
+                    assign(instruction.getResult(), from);
                 }
 
                 case ADD -> {
                     final var lhs = eval(instruction.getLHS());
                     final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs + rhs);
+                    assign(instruction.getResult(), lhs + rhs);
                 }
 
                 case SUB -> {
                     final var lhs = eval(instruction.getLHS());
                     final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs - rhs);
+                    assign(instruction.getResult(), lhs - rhs);
                 }
 
                 case MUL -> {
                     final var lhs = eval(instruction.getLHS());
                     final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs * rhs);
+                    assign(instruction.getResult(), lhs * rhs);
                 }
 
                 case RET -> this.returnValue = eval(instruction.getReturnValue());
@@ -57,19 +56,36 @@ public class IREmulator {
         if (value instanceof IRImmediate immediate) {
             return immediate.getValue();
         } else if (value instanceof IRVariable variable) {
-            return environment.get(variable);
+            final var index = variable.getIndex();
+            return index < assigned.length && assigned[index] ? environment[index] : null;
         } else {
             throw new RuntimeException("Unknown IR value type");
         }
     }
 
+    /**
+     * 以变量的稠密下标 {@link IRVariable#getIndex()} 为数组下标记录变量的值
+     */
+    private void assign(IRVariable variable, int value) {
+        final var index = variable.getIndex();
+        if (index >= environment.length) {
+            final var capacity = Math.max(index + 1, environment.length * 2);
+            environment = Arrays.copyOf(environment, capacity);
+            assigned = Arrays.copyOf(assigned, capacity);
+        }
+        environment[index] = value;
+        assigned[index] = true;
+    }
+
     private IREmulator(List<Instruction> instructions) {
         this.instructions = instructions;
-        this.environment = new HashMap<>();
+        this.environment = new int[16];
+        this.assigned = new boolean[16];
         this.returnValue = null;
     }
 
     private final List<Instruction> instructions;
-    private final Map<IRVariable, Integer> environment;
+    private int[] environment;
+    private boolean[] assigned;
     private Integer returnValue;
 }